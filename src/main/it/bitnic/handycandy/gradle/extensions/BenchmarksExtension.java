@@ -0,0 +1,46 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+
+/**
+ * Settings for the JMH benchmarks of java-library projects (the jmh source set, in src/jmh).
+ * <p>
+ * The jmh task runs the benchmarks and saves their results as JSON; jmhCompare compares them with a baseline and fails
+ * if any benchmark got worse than {@link #getThreshold()} (lower throughput, or higher time per operation).
+ */
+public abstract class BenchmarksExtension {
+
+	/** The JMH version (default: 1.37). */
+	public abstract Property<String> getVersion();
+
+	/** Regexes of the benchmarks to run (default: all). */
+	public abstract ListProperty<String> getIncludes();
+
+	/** -f (default: 1) */
+	public abstract Property<Integer> getForks();
+
+	/** -wi (default: 3) */
+	public abstract Property<Integer> getWarmupIterations();
+
+	/** -i (default: 5) */
+	public abstract Property<Integer> getIterations();
+
+	/** The tolerated worsening, as a fraction of the baseline score (default: 0.1). */
+	public abstract Property<Double> getThreshold();
+
+	public abstract RegularFileProperty getResultsFile();
+
+	/** The results to compare with (usually under version control); jmhCompare creates it if missing. */
+	public abstract RegularFileProperty getBaselineFile();
+
+	public BenchmarksExtension() {
+		getVersion().convention("1.37");
+		getForks().convention(1);
+		getWarmupIterations().convention(3);
+		getIterations().convention(5);
+		getThreshold().convention(0.1);
+	}
+
+}
@@ -0,0 +1,149 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.ResolvedDependency;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+
+import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar;
+
+import it.bitnic.handycandy.gradle.util.GradleUtil;
+
+/**
+ * Settings for the shadow jar of java-application projects.
+ * <p>
+ * Minimization drops the dependency classes the application can't reach; dependencies providing services
+ * (META-INF/services) are always kept whole, and so are the ones listed in {@link #getKeep()}, which is meant for
+ * dependencies only used via reflection.
+ */
+public abstract class FatJarExtension {
+
+	/** Whether to remove unused dependency classes from the shadow jar (default: true). */
+	public abstract Property<Boolean> getMinimize();
+
+	/** Dependencies not to minimize, as group:name[:version] with * wildcards (eg. org.hibernate:*). */
+	public abstract ListProperty<String> getKeep();
+
+	/** Whether to list the size of each dependency before and after minimization (default: true). */
+	public abstract Property<Boolean> getReportSizes();
+
+	public FatJarExtension() {
+		getMinimize().convention(true);
+		getReportSizes().convention(true);
+	}
+
+	public void configure(ShadowJar shadowJar, FileCollection runtimeClasspath) {
+		shadowJar.mergeServiceFiles();
+
+		// reproducible archives (so that they can come from the build cache)
+		shadowJar.setPreserveFileTimestamps(false);
+		shadowJar.setReproducibleFileOrder(true);
+
+		// (minimize() just sets a flag, so it can't follow the extension lazily)
+		GradleUtil.whenEvaluated(shadowJar.getProject(), () -> {
+			if (!getMinimize().get()) return;
+			shadowJar.minimize(filter -> {
+				filter.exclude(new ProvidesServices());
+				filter.exclude(new IsKept(getKeep()));
+			});
+		});
+		shadowJar.doLast(new ReportSizes(getMinimize().zip(getReportSizes(), (minimize, report) -> minimize && report), runtimeClasspath));
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	private static class ProvidesServices implements Spec<ResolvedDependency> {
+
+		@Override
+		public boolean isSatisfiedBy(ResolvedDependency dependency) {
+			return dependency.getModuleArtifacts().stream().anyMatch(artifact -> {
+				try (ZipFile jar = new ZipFile(artifact.getFile())) {
+					return jar.stream().anyMatch(entry -> entry.getName().startsWith("META-INF/services/") && !entry.isDirectory());
+				} catch (IOException e) {
+					return false;
+				}
+			});
+		}
+
+	}
+
+	private static class IsKept implements Spec<ResolvedDependency> {
+
+		private final Provider<List<String>> keep;
+
+		IsKept(Provider<List<String>> keep) {
+			this.keep = keep;
+		}
+
+		@Override
+		public boolean isSatisfiedBy(ResolvedDependency dependency) {
+			String id = dependency.getModuleGroup() + ":" + dependency.getModuleName() + ":" + dependency.getModuleVersion();
+			return keep.get().stream().anyMatch(notation -> {
+				String regex = Pattern.quote(notation).replace("*", "\\E.*\\Q") + (notation.split(":").length < 3 ? ":.*" : "");
+				return id.matches(regex);
+			});
+		}
+
+	}
+
+	private static class ReportSizes implements Action<Task> {
+
+		private final Provider<Boolean> enabled;
+		private final FileCollection runtimeClasspath;
+
+		ReportSizes(Provider<Boolean> enabled, FileCollection runtimeClasspath) {
+			this.enabled = enabled;
+			this.runtimeClasspath = runtimeClasspath;
+		}
+
+		@Override
+		public void execute(Task task) {
+			if (!enabled.get()) return;
+			File shadowJar = ((ShadowJar) task).getArchiveFile().get().getAsFile();
+			Set<String> kept;
+			try (ZipFile jar = new ZipFile(shadowJar)) {
+				kept = jar.stream().map(ZipEntry::getName).collect(Collectors.toSet());
+			} catch (IOException e) {
+				throw new Error("Couldn't read " + shadowJar.getPath(), e);
+			}
+
+			Map<String,long[]> sizes = new HashMap<>(); // before, after
+			runtimeClasspath.getFiles().stream().filter(file -> file.getName().endsWith(".jar")).forEach(dependency -> {
+				try (ZipFile jar = new ZipFile(dependency)) {
+					long[] size = sizes.computeIfAbsent(dependency.getName(), _name -> new long[2]);
+					jar.stream().filter(entry -> entry.getName().endsWith(".class")).forEach(entry -> {
+						size[0] += entry.getSize();
+						if (kept.contains(entry.getName())) size[1] += entry.getSize();
+					});
+				} catch (IOException e) {
+					task.getLogger().warn("Couldn't read " + dependency.getPath(), e);
+				}
+			});
+
+			List<Map.Entry<String,long[]>> bySize = new ArrayList<>(sizes.entrySet());
+			bySize.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+			task.getLogger().lifecycle("Dependency classes in " + shadowJar.getName() + " (uncompressed, before -> after minimization):");
+			bySize.forEach(entry -> {
+				task.getLogger().lifecycle(String.format("\t%8d KB -> %8d KB  %s", entry.getValue()[0] >> 10, entry.getValue()[1] >> 10, entry.getKey()));
+			});
+		}
+
+	}
+
+}
@@ -0,0 +1,160 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.process.CommandLineArgumentProvider;
+import org.gradle.process.JavaForkOptions;
+
+/**
+ * Profiles tests and java executions with Java Flight Recorder (enabled with -Pprofile).
+ * <p>
+ * Each profiled task writes its recordings (one per JVM) to a directory named after the task under
+ * {@link #getRecordingsDir()}, and is followed by the jfrSummary task, which lists hot methods, allocation sites, GC
+ * pauses and lock contention.
+ */
+public abstract class FlightRecordingExtension {
+
+	public abstract Property<Boolean> getEnabled();
+
+	/** The JFR settings template (default: profile, the more detailed of the two shipped with the JDK). */
+	public abstract Property<String> getSettings();
+
+	/** Event settings overriding the template's (default: 10ms sampling, 1ms lock thresholds). */
+	public abstract MapProperty<String,String> getEventSettings();
+
+	public abstract DirectoryProperty getRecordingsDir();
+
+	public FlightRecordingExtension() {
+		getSettings().convention("profile");
+		getEventSettings().convention(Map.of(
+			"jdk.ExecutionSample#period",      "10ms",
+			"jdk.JavaMonitorEnter#threshold",  "1ms",
+			"jdk.ThreadPark#threshold",        "1ms"
+		));
+	}
+
+	public <T extends Task & JavaForkOptions> void configure(T task, String summaryTaskName) {
+		Provider<Directory> dir = getRecordingsDir().dir(task.getName());
+		task.getJvmArgumentProviders().add(new RecordingArgs(getEnabled(), dir, getSettings(), getEventSettings()));
+		task.doFirst(new CleanRecordingsDir(getEnabled(), dir));
+		task.finalizedBy((Callable<List<String>>) () -> getEnabled().get() ? List.of(summaryTaskName) : List.of());
+
+		// a profiled task must actually run
+		task.getOutputs().upToDateWhen(new IsDisabled(getEnabled()));
+		task.getOutputs().doNotCacheIf("Flight recording", new IsEnabled(getEnabled()));
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	private static class IsEnabled implements Spec<Task> {
+
+		private final Provider<Boolean> enabled;
+
+		IsEnabled(Provider<Boolean> enabled) {
+			this.enabled = enabled;
+		}
+
+		@Override
+		public boolean isSatisfiedBy(Task task) {
+			return enabled.get();
+		}
+
+	}
+
+	private static class IsDisabled implements Spec<Task> {
+
+		private final Provider<Boolean> enabled;
+
+		IsDisabled(Provider<Boolean> enabled) {
+			this.enabled = enabled;
+		}
+
+		@Override
+		public boolean isSatisfiedBy(Task task) {
+			return !enabled.get();
+		}
+
+	}
+
+	private static class RecordingArgs implements CommandLineArgumentProvider {
+
+		private final Provider<Boolean> enabled;
+		private final Provider<Directory> dir;
+		private final Provider<String> settings;
+		private final Provider<Map<String,String>> eventSettings;
+
+		RecordingArgs(Provider<Boolean> enabled, Provider<Directory> dir, Provider<String> settings, Provider<Map<String,String>> eventSettings) {
+			this.enabled = enabled;
+			this.dir = dir;
+			this.settings = settings;
+			this.eventSettings = eventSettings;
+		}
+
+		@Input public Provider<Boolean> getEnabled() {
+			return enabled;
+		}
+
+		@Internal public Provider<Directory> getDir() {
+			return dir;
+		}
+
+		@Input public Provider<String> getSettings() {
+			return settings;
+		}
+
+		@Input public Provider<Map<String,String>> getEventSettings() {
+			return eventSettings;
+		}
+
+		@Override
+		public Iterable<String> asArguments() {
+			if (!enabled.get()) return List.of();
+			// a directory as filename makes each JVM (eg. each test fork) write its own file
+			List<String> options = new ArrayList<>(List.of( "settings=" + settings.get(),
+			                                                "filename=" + dir.get().getAsFile().getAbsolutePath(),
+			                                                "dumponexit=true" ));
+			options.addAll(eventSettings.get().entrySet().stream().map(entry -> entry.getKey() + "=" + entry.getValue()).sorted().collect(Collectors.toList()));
+			return List.of("-XX:StartFlightRecording=" + String.join(",", options));
+		}
+
+	}
+
+	private static class CleanRecordingsDir implements Action<Task> {
+
+		private final Provider<Boolean> enabled;
+		private final Provider<Directory> dir;
+
+		CleanRecordingsDir(Provider<Boolean> enabled, Provider<Directory> dir) {
+			this.enabled = enabled;
+			this.dir = dir;
+		}
+
+		@Override
+		public void execute(Task task) {
+			if (!enabled.get()) return;
+			File recordings = dir.get().getAsFile();
+			File[] old = recordings.listFiles((_dir, name) -> name.endsWith(".jfr"));
+			if (old != null) {
+				for (File file : old) file.delete();
+			}
+			recordings.mkdirs();
+		}
+
+	}
+
+}
@@ -0,0 +1,55 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.util.List;
+
+import org.gradle.api.Project;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+
+import groovy.lang.GroovyObject;
+
+/**
+ * Keeps the git.properties generated by com.gorylenko.gradle-git-properties from invalidating the build cache on
+ * every commit.
+ * <p>
+ * The volatile keys are always ignored when comparing runtime classpaths (so tests don't rerun just because of them);
+ * in stable mode, git.properties only contains the stable keys, so that jars don't change either.
+ */
+public abstract class GitPropertiesCachingExtension {
+
+	/** Keys ignored on runtime classpaths (default: all the keys but the build version and the remote url). */
+	public abstract ListProperty<String> getVolatileKeys();
+
+	/** Whether to only write the stable keys to git.properties (default: false). */
+	public abstract Property<Boolean> getStableOnly();
+
+	/** The keys written in stable mode (default: build version, remote url). */
+	public abstract ListProperty<String> getStableKeys();
+
+	public GitPropertiesCachingExtension() {
+		getVolatileKeys().convention(List.of(
+			"git.branch",
+			"git.build.host", "git.build.time", "git.build.user.email", "git.build.user.name",
+			"git.closest.tag.commit.count", "git.closest.tag.name",
+			"git.commit.id", "git.commit.id.abbrev", "git.commit.id.describe",
+			"git.commit.message.full", "git.commit.message.short",
+			"git.commit.time", "git.commit.user.email", "git.commit.user.name",
+			"git.dirty", "git.tags", "git.total.commit.count"
+		));
+		getStableOnly().convention(false);
+		getStableKeys().convention(List.of(
+			"git.build.version", "git.remote.origin.url"
+		));
+	}
+
+	public void configure(Project project) {
+		project.getNormalization().getRuntimeClasspath().properties("**/git.properties", properties -> {
+			getVolatileKeys().get().forEach(properties::ignoreProperty);
+		});
+		if (getStableOnly().get()) {
+			// the plugin's extension is a groovy object, as per groovy: gitProperties { keys = [ ... ] }
+			((GroovyObject) project.getExtensions().getByName("gitProperties")).setProperty("keys", getStableKeys().get());
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.compile.ForkOptions;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.process.CommandLineArgumentProvider;
+
+import it.bitnic.handycandy.gradle.services.BuildTimingsService;
+import it.bitnic.handycandy.gradle.util.GradleUtil;
+
+/**
+ * How java gets compiled.
+ * <p>
+ * Forked compilers run in worker daemons, which gradle keeps around and reuses for any compile task with the same fork
+ * options: that's why heap and JVM arguments are set here, once for all projects, rather than per task.
+ * <p>
+ * Annotation processors that don't declare themselves incremental (in META-INF/gradle/incremental.annotation.processors)
+ * make every compilation a full one: they get reported at each compilation, and listed in the build timings report
+ * (see BuildTimingsService) together with each compilation's time and recompilation causes.
+ */
+public abstract class JavaCompilerExtension {
+
+	/** Whether to compile in worker daemons rather than in the gradle daemon (default: false, or the javac.fork property). */
+	public abstract Property<Boolean> getFork();
+
+	/** Max heap of the compiler daemons (default: 1g). */
+	public abstract Property<String> getHeap();
+
+	/** Other JVM arguments for the compiler daemons. */
+	public abstract ListProperty<String> getJvmArgs();
+
+	/** Whether to report annotation processors that aren't incremental (default: true). */
+	public abstract Property<Boolean> getCheckProcessors();
+
+	public JavaCompilerExtension() {
+		getHeap().convention("1g");
+		getCheckProcessors().convention(true);
+	}
+
+	/**
+	 * Applies the settings to a compile task. Forking and the heap are applied once the project has been evaluated (so
+	 * that they can be set after the task got configured), and only if the task's own configuration didn't change them.
+	 */
+	public void configure(JavaCompile javac) {
+		boolean fork = javac.getOptions().isFork();
+		String heap = javac.getOptions().getForkOptions().getMemoryMaximumSize();
+		GradleUtil.whenEvaluated(javac.getProject(), () -> {
+			if (!getFork().get()) return;
+			ForkOptions forkOptions = javac.getOptions().getForkOptions();
+			if (javac.getOptions().isFork() == fork) javac.getOptions().setFork(true);
+			if (Objects.equals(forkOptions.getMemoryMaximumSize(), heap)) forkOptions.setMemoryMaximumSize(getHeap().get());
+		});
+		javac.getOptions().getForkOptions().getJvmArgumentProviders().add(new DaemonArgs(getFork().zip(getJvmArgs(), (forked, args) -> forked ? args : List.of())));
+
+		Provider<BuildTimingsService> timings = BuildTimingsService.find(javac.getProject());
+		if (timings != null) {
+			javac.usesService(timings);
+		}
+		javac.doFirst(new CheckProcessors(getCheckProcessors(), timings));
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	private static class DaemonArgs implements CommandLineArgumentProvider {
+
+		private final Provider<List<String>> args;
+
+		DaemonArgs(Provider<List<String>> args) {
+			this.args = args;
+		}
+
+		@Input public Provider<List<String>> getArgs() {
+			return args;
+		}
+
+		@Override
+		public Iterable<String> asArguments() {
+			return args.get();
+		}
+
+	}
+
+	private static class CheckProcessors implements Action<Task> {
+
+		private static final String PROCESSORS = "META-INF/services/javax.annotation.processing.Processor";
+		private static final String INCREMENTAL_PROCESSORS = "META-INF/gradle/incremental.annotation.processors";
+
+		private final Provider<Boolean> check;
+		private final Provider<BuildTimingsService> timings;
+
+		CheckProcessors(Provider<Boolean> check, Provider<BuildTimingsService> timings) {
+			this.check = check;
+			this.timings = timings;
+		}
+
+		@Override
+		public void execute(Task task) {
+			if (!check.get() && timings == null) return;
+			JavaCompile javac = (JavaCompile) task;
+			List<String> nonIncremental = new ArrayList<>();
+			if (check.get() && javac.getOptions().getAnnotationProcessorPath() != null) {
+				for (File entry : javac.getOptions().getAnnotationProcessorPath()) {
+					Set<String> processors = lines(entry, PROCESSORS);
+					processors.removeAll(lines(entry, INCREMENTAL_PROCESSORS).stream()
+					                                                          .map(line -> line.split(",")[0].trim())
+					                                                          .collect(Collectors.toSet()));
+					nonIncremental.addAll(processors);
+				}
+				if (!nonIncremental.isEmpty()) {
+					task.getLogger().warn(task.getPath() + ": annotation processors that are not incremental (and force full recompilations): "
+					                      + String.join(", ", nonIncremental));
+				}
+			}
+			if (timings != null) {
+				timings.get().compiling(task.getPath(), nonIncremental);
+			}
+		}
+
+		// non-blank, non-comment lines of a file in a jar or directory (an empty set if there's no such file)
+		private static Set<String> lines(File classpathEntry, String path) {
+			List<String> lines;
+			try {
+				if (classpathEntry.isDirectory()) {
+					File file = new File(classpathEntry, path);
+					lines = file.isFile() ? Files.readAllLines(file.toPath()) : List.of();
+				} else if (classpathEntry.isFile()) {
+					try (ZipFile jar = new ZipFile(classpathEntry)) {
+						ZipEntry entry = jar.getEntry(path);
+						if (entry == null) {
+							lines = List.of();
+						} else {
+							try (InputStream in = jar.getInputStream(entry)) {
+								lines = List.of(new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\\R"));
+							}
+						}
+					}
+				} else {
+					lines = List.of();
+				}
+			} catch (IOException e) {
+				throw new Error("Couldn't read " + path + " from " + classpathEntry.getPath(), e);
+			}
+			return lines.stream()
+			            .map(line -> line.replaceFirst("#.*", "").trim())
+			            .filter(line -> !line.isEmpty())
+			            .collect(Collectors.toCollection(LinkedHashSet::new));
+		}
+
+	}
+
+}
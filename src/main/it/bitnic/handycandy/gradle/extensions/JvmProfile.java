@@ -0,0 +1,109 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+
+/**
+ * JVM settings, starting from a profile: what isn't set explicitly comes from the profile.
+ * <ul>
+ * <li>throughput: parallel GC, heap pre-touched (and fixed, if the max heap is set)
+ * <li>latency: Z GC, heap pre-touched (and fixed, if the max heap is set)
+ * <li>lowMemory: G1 GC with string deduplication, 256m max heap
+ * <li>custom: only the explicit settings
+ * </ul>
+ */
+public abstract class JvmProfile {
+
+	/** One of throughput, latency, lowMemory or custom. */
+	public abstract Property<String> getProfile();
+
+	/** -Xms (eg. 512m) */
+	public abstract Property<String> getMinHeap();
+
+	/** -Xmx (eg. 2g) */
+	public abstract Property<String> getMaxHeap();
+
+	/** The garbage collector, as in -XX:+Use&lt;gc&gt;GC: G1, Z, Parallel, Serial or Shenandoah. */
+	public abstract Property<String> getGc();
+
+	/** -XX:+AlwaysPreTouch */
+	public abstract Property<Boolean> getAlwaysPreTouch();
+
+	/** -XX:+UseStringDeduplication (only honoured by G1 before java 18) */
+	public abstract Property<Boolean> getStringDeduplication();
+
+	/** Any other JVM arguments, appended after the ones above. */
+	public abstract ListProperty<String> getJvmArgs();
+
+	private enum Preset {
+
+		throughput ("Parallel", true,  false, null,   true),
+		latency    ("Z",        true,  false, null,   true),
+		lowMemory  ("G1",       false, true,  "256m", false),
+		custom     (null,       false, false, null,   false);
+
+		final String gc;
+		final boolean alwaysPreTouch;
+		final boolean stringDeduplication;
+		final String maxHeap;
+		final boolean fixedHeap;
+
+		Preset(String gc, boolean alwaysPreTouch, boolean stringDeduplication, String maxHeap, boolean fixedHeap) {
+			this.gc = gc;
+			this.alwaysPreTouch = alwaysPreTouch;
+			this.stringDeduplication = stringDeduplication;
+			this.maxHeap = maxHeap;
+			this.fixedHeap = fixedHeap;
+		}
+
+		static Preset of(String profile) {
+			return Stream.of(values())
+			             .filter(preset -> preset.name().equals(profile))
+			             .findFirst()
+			             .orElseThrow(() -> new InvalidUserDataException("Unknown JVM profile '" + profile + "' (expected one of "
+			                                                             + Stream.of(values()).map(Preset::name).collect(Collectors.joining(", ")) + ")"));
+		}
+
+	}
+
+	/** -Xms, or null */
+	public String getEffectiveMinHeap() {
+		Preset preset = Preset.of(getProfile().get());
+		return getMinHeap().getOrElse(preset.fixedHeap ? getEffectiveMaxHeap() : null);
+	}
+
+	/** -Xmx, or null */
+	public String getEffectiveMaxHeap() {
+		return getMaxHeap().getOrElse(Preset.of(getProfile().get()).maxHeap);
+	}
+
+	/** All the flags but the heap sizes. */
+	public List<String> getEffectiveJvmArgs() {
+		Preset preset = Preset.of(getProfile().get());
+		List<String> args = new ArrayList<>();
+		String gc = getGc().getOrElse(preset.gc);
+		if (gc != null) args.add("-XX:+Use" + gc + "GC");
+		if (getAlwaysPreTouch().getOrElse(preset.alwaysPreTouch)) args.add("-XX:+AlwaysPreTouch");
+		if (getStringDeduplication().getOrElse(preset.stringDeduplication)) args.add("-XX:+UseStringDeduplication");
+		args.addAll(getJvmArgs().get());
+		return args;
+	}
+
+	/** All the flags, heap sizes included. */
+	public List<String> getEffectiveFlags() {
+		List<String> flags = new ArrayList<>();
+		String minHeap = getEffectiveMinHeap();
+		String maxHeap = getEffectiveMaxHeap();
+		if (minHeap != null) flags.add("-Xms" + minHeap);
+		if (maxHeap != null) flags.add("-Xmx" + maxHeap);
+		flags.addAll(getEffectiveJvmArgs());
+		return flags;
+	}
+
+}
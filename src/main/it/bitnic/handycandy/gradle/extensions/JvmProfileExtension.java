@@ -0,0 +1,107 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.inject.Inject;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.tasks.Input;
+import org.gradle.process.CommandLineArgumentProvider;
+import org.gradle.process.JavaForkOptions;
+
+import it.bitnic.handycandy.gradle.util.GradleUtil;
+
+/**
+ * The JVM settings used by tests, java executions, start scripts and jlink images, as a {@link JvmProfile} (default:
+ * custom, or the jvmProfile property) plus per task overrides, eg.:
+ * <pre>
+ * jvmProfile {
+ *     profile = 'throughput'
+ *     maxHeap = '2g'
+ *     task('test') {
+ *         profile = 'lowMemory'
+ *     }
+ * }
+ * </pre>
+ * Settings not set in an override come from the defaults (or, failing that, from the override's profile).
+ * <p>
+ * For tests, the max heap replaces testParallelism.forkHeap (the default max heap of tests), which is still used to
+ * decide how many forks to run.
+ */
+public abstract class JvmProfileExtension extends JvmProfile {
+
+	private final Map<String,JvmProfile> byTaskName = new LinkedHashMap<>();
+
+	@Inject protected abstract ObjectFactory getObjects();
+
+	@Inject protected abstract ProviderFactory getProviders();
+
+	/** Overrides the settings for the task with the given name. */
+	public void task(String taskName, Action<? super JvmProfile> action) {
+		action.execute(byTaskName.computeIfAbsent(taskName, _taskName -> {
+			JvmProfile profile = getObjects().newInstance(JvmProfile.class);
+			profile.getProfile().convention(getProfile());
+			profile.getMinHeap().convention(getMinHeap());
+			profile.getMaxHeap().convention(getMaxHeap());
+			profile.getGc().convention(getGc());
+			profile.getAlwaysPreTouch().convention(getAlwaysPreTouch());
+			profile.getStringDeduplication().convention(getStringDeduplication());
+			profile.getJvmArgs().convention(getJvmArgs());
+			return profile;
+		}));
+	}
+
+	/** The settings for the task with the given name. */
+	public JvmProfile forTask(String taskName) {
+		return byTaskName.getOrDefault(taskName, this);
+	}
+
+	/**
+	 * Applies the settings to a task. Heap sizes are applied once the project has been evaluated (so that they can be
+	 * set after the task got configured), and only if the task's own configuration didn't change them.
+	 */
+	public <T extends Task & JavaForkOptions> void configure(T task) {
+		configure(task, getProviders().provider(() -> null));
+	}
+
+	/** Applies the settings to a task, with the max heap to use when the profile doesn't set one. */
+	public <T extends Task & JavaForkOptions> void configure(T task, Provider<String> defaultMaxHeap) {
+		String minHeap = task.getMinHeapSize();
+		String maxHeap = task.getMaxHeapSize();
+		GradleUtil.whenEvaluated(task.getProject(), () -> {
+			JvmProfile profile = forTask(task.getName());
+			String effectiveMaxHeap = profile.getEffectiveMaxHeap() != null ? profile.getEffectiveMaxHeap() : defaultMaxHeap.getOrNull();
+			if (Objects.equals(task.getMinHeapSize(), minHeap) && profile.getEffectiveMinHeap() != null) task.setMinHeapSize(profile.getEffectiveMinHeap());
+			if (Objects.equals(task.getMaxHeapSize(), maxHeap) && effectiveMaxHeap != null) task.setMaxHeapSize(effectiveMaxHeap);
+		});
+		String taskName = task.getName();
+		task.getJvmArgumentProviders().add(new ProfileArgs(getProviders().provider(() -> forTask(taskName).getEffectiveJvmArgs())));
+	}
+
+	private static class ProfileArgs implements CommandLineArgumentProvider {
+
+		private final Provider<List<String>> args;
+
+		ProfileArgs(Provider<List<String>> args) {
+			this.args = args;
+		}
+
+		@Input public Provider<List<String>> getArgs() {
+			return args;
+		}
+
+		@Override
+		public Iterable<String> asArguments() {
+			return args.get();
+		}
+
+	}
+
+}
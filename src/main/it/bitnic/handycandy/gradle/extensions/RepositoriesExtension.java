@@ -0,0 +1,72 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.util.List;
+
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.dsl.RepositoryHandler;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+
+/**
+ * Which repositories dependencies are resolved from, and what each repository can serve.
+ * <p>
+ * By default: Google's repository only for Google/Android groups, Maven Central for everything else and no JCenter.
+ * With an offline mirror (a file based maven repository), that is the only repository.
+ */
+public abstract class RepositoriesExtension {
+
+	/** Regexes of the groups resolved from Google's repository (and not from the others). */
+	public abstract ListProperty<String> getGoogleGroups();
+
+	/** Whether to also use JCenter, as a last resort (default: false, or the repositories.jcenter property). */
+	public abstract Property<Boolean> getJcenter();
+
+	/**
+	 * A local maven repository to use instead of all others (default: the repositories.offlineMirror property, relative
+	 * to the root project directory).
+	 */
+	public abstract DirectoryProperty getOfflineMirror();
+
+	/** Whether to lock the versions of all configurations (see --write-locks, default: true). */
+	public abstract Property<Boolean> getLockDependencies();
+
+	public RepositoriesExtension() {
+		getGoogleGroups().convention(List.of(
+			"androidx\\..*",
+			"com\\.android(\\..*)?",
+			"com\\.google\\.android\\..*",
+			"com\\.google\\.firebase(\\..*)?",
+			"com\\.google\\.gms(\\..*)?",
+			"com\\.google\\.testing\\.platform"
+		));
+		getLockDependencies().convention(true);
+	}
+
+	public void configure(Project project) {
+		RepositoryHandler repos = project.getRepositories();
+		if (getOfflineMirror().isPresent()) {
+			repos.maven(mirror -> {
+				mirror.setName("offlineMirror");
+				mirror.setUrl(getOfflineMirror().get().getAsFile().toURI());
+			});
+		} else {
+			List<String> googleGroups = getGoogleGroups().get();
+			// repos.mavenLocal();
+			repos.mavenCentral(central -> central.content(content -> googleGroups.forEach(content::excludeGroupByRegex)));
+			repos.google(google -> google.content(content -> googleGroups.forEach(content::includeGroupByRegex)));
+			if (getJcenter().get()) {
+				repos.maven(jcenter -> {
+					jcenter.setName("jcenter");
+					jcenter.setUrl("https://jcenter.bintray.com/");
+					jcenter.content(content -> googleGroups.forEach(content::excludeGroupByRegex));
+				});
+			}
+		}
+
+		if (getLockDependencies().get()) {
+			project.getDependencyLocking().lockAllConfigurations();
+		}
+	}
+
+}
@@ -0,0 +1,278 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.api.tasks.testing.Test;
+
+import it.bitnic.handycandy.gradle.util.ClassIndex;
+import it.bitnic.handycandy.gradle.util.ClassIndex.ClassInfo;
+
+/**
+ * Test impact analysis: when enabled, test tasks only run the test classes that (transitively) depend on a class that
+ * changed since the last successful run of the task.
+ * <p>
+ * Dependencies are read from the bytecode of the class directories on the test runtime classpath and kept in an index
+ * under {@code indexDir}, which is updated after each compilation. All tests are run if there is no record of a previous
+ * successful run, or if anything else than classes changed on the test runtime classpath: any jar, or any other file
+ * (eg. a resource) in its directories.
+ * <p>
+ * Bytecode doesn't show the use of compile-time constants (static final primitive and String fields with a constant
+ * initializer), as javac inlines them: all tests are also run when a changed class declares (or declared) such
+ * constants.
+ */
+public abstract class TestImpactExtension {
+
+	/** Whether to only run affected tests (default: false, or the value of the {@code testImpact} property). */
+	public abstract Property<Boolean> getEnabled();
+
+	/** Where the class index is kept (default: {@code build/test-impact}). */
+	public abstract DirectoryProperty getIndexDir();
+
+	public void configure(JavaCompile javac) {
+		javac.doLast(new UpdateIndex(getEnabled(), javac.getDestinationDirectory(), getIndexDir()));
+	}
+
+	public void configure(Test test) {
+		Provider<RegularFile> baselineFile = getIndexDir().file(test.getName() + ".baseline");
+		// (the classpath is looked up later, as the java plugin may not have set it yet)
+		FileCollection classpath = test.getProject().files((Callable<FileCollection>) test::getClasspath);
+		// excluding the unaffected tests (rather than including the affected ones) keeps the task's own includes working
+		test.exclude(new UnaffectedTestsSpec(getEnabled(), classpath, getIndexDir(), baselineFile));
+		test.doLast(new SaveBaseline(getEnabled(), classpath, getIndexDir(), baselineFile));
+		// the baseline must be saved after each run, which wouldn't happen when taking the results from the build cache
+		test.getOutputs().doNotCacheIf("Test impact analysis is enabled", new IsEnabled(getEnabled()));
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	private static class IsEnabled implements Spec<Task> {
+
+		private final Provider<Boolean> enabled;
+
+		IsEnabled(Provider<Boolean> enabled) {
+			this.enabled = enabled;
+		}
+
+		@Override
+		public boolean isSatisfiedBy(Task task) {
+			return enabled.get();
+		}
+
+	}
+
+	private static class UpdateIndex implements Action<Task> {
+
+		private final Provider<Boolean> enabled;
+		private final Provider<Directory> classesDir;
+		private final Provider<Directory> indexDir;
+
+		UpdateIndex(Provider<Boolean> enabled, Provider<Directory> classesDir, Provider<Directory> indexDir) {
+			this.enabled = enabled;
+			this.classesDir = classesDir;
+			this.indexDir = indexDir;
+		}
+
+		@Override
+		public void execute(Task task) {
+			if (enabled.get()) ClassIndex.update(classesDir.get().getAsFile(), indexDir.get().getAsFile());
+		}
+
+	}
+
+	private static class UnaffectedTestsSpec implements Spec<FileTreeElement> {
+
+		private static final Logger LOGGER = Logging.getLogger(UnaffectedTestsSpec.class);
+
+		private final Provider<Boolean> enabled;
+		private final FileCollection classpath;
+		private final Provider<Directory> indexDir;
+		private final Provider<RegularFile> baselineFile;
+
+		private transient Set<String> affected; // null if all tests should run
+		private transient boolean computed;
+
+		UnaffectedTestsSpec(Provider<Boolean> enabled, FileCollection classpath, Provider<Directory> indexDir, Provider<RegularFile> baselineFile) {
+			this.enabled = enabled;
+			this.classpath = classpath;
+			this.indexDir = indexDir;
+			this.baselineFile = baselineFile;
+		}
+
+		@Override
+		public boolean isSatisfiedBy(FileTreeElement element) {
+			if (!computed) {
+				affected = enabled.get() ? computeAffected() : null;
+				computed = true;
+			}
+			if (affected == null || element.isDirectory()) return false;
+			String className = element.getRelativePath().getPathString().replaceFirst("\\.class$", "").replace('/', '.');
+			return !affected.contains(className) && !affected.contains(className.replaceFirst("\\$.*", ""));
+		}
+
+		private Set<String> computeAffected() {
+			Map<String,String> baseline = readBaseline(baselineFile.get().getAsFile());
+			if (baseline.isEmpty()) {
+				LOGGER.lifecycle("No previous successful test run recorded, running all tests");
+				return null;
+			}
+			Map<String,ClassInfo> classes = new HashMap<>();
+			Map<String,String> current = snapshot(classpath, indexDir.get().getAsFile(), classes);
+			if (!nonClasses(current).equals(nonClasses(baseline))) {
+				LOGGER.lifecycle("Jars or resources changed on the test runtime classpath, running all tests");
+				return null;
+			}
+
+			Set<String> changed = new HashSet<>();
+			current.forEach((name, checksum) -> { if (!checksum.equals(baseline.get(name))) changed.add(name); });
+			baseline.keySet().forEach(name -> { if (!current.containsKey(name)) changed.add(name); });
+			for (String name : changed) {
+				if (hasConstants(current.get(name)) || hasConstants(baseline.get(name))) {
+					LOGGER.lifecycle("Changed class " + name + " declares constants (which are inlined by its dependents), running all tests");
+					return null;
+				}
+			}
+
+			Map<String,Set<String>> dependents = new HashMap<>();
+			classes.values().forEach(info -> {
+				info.dependencies.forEach(dep -> dependents.computeIfAbsent(dep, _dep -> new HashSet<>()).add(info.name));
+			});
+			Set<String> affected = new HashSet<>(changed);
+			Deque<String> queue = new ArrayDeque<>(changed);
+			while (!queue.isEmpty()) {
+				dependents.getOrDefault(queue.pop(), Set.of()).forEach(dependent -> {
+					if (affected.add(dependent)) queue.push(dependent);
+				});
+			}
+			LOGGER.lifecycle(changed.size() + " changed classes, " + affected.size() + " affected classes");
+			return affected;
+		}
+
+	}
+
+	private static class SaveBaseline implements Action<Task> {
+
+		private final Provider<Boolean> enabled;
+		private final FileCollection classpath;
+		private final Provider<Directory> indexDir;
+		private final Provider<RegularFile> baselineFile;
+
+		SaveBaseline(Provider<Boolean> enabled, FileCollection classpath, Provider<Directory> indexDir, Provider<RegularFile> baselineFile) {
+			this.enabled = enabled;
+			this.classpath = classpath;
+			this.indexDir = indexDir;
+			this.baselineFile = baselineFile;
+		}
+
+		@Override
+		public void execute(Task task) {
+			if (!enabled.get()) return;
+			File indexDir = this.indexDir.get().getAsFile();
+			File baselineFile = this.baselineFile.get().getAsFile();
+			Map<String,String> snapshot = snapshot(classpath, indexDir, new HashMap<>());
+			try {
+				Files.createDirectories(indexDir.toPath());
+				try (Writer out = Files.newBufferedWriter(baselineFile.toPath(), StandardCharsets.UTF_8)) {
+					Properties properties = new Properties();
+					properties.putAll(snapshot);
+					properties.store(out, null);
+				}
+			} catch (IOException e) {
+				throw new Error("Couldn't write " + baselineFile.getPath(), e);
+			}
+		}
+
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	// class name -> checksum (followed by CONSTANTS if the class declares constants) for classes in directories,
+	// "file:" + path -> checksum for their other files, "jar:" + path -> size and timestamp for jars
+	private static final String CONSTANTS = " constants";
+
+	private static Map<String,String> snapshot(FileCollection classpath, File indexDir, Map<String,ClassInfo> classes) {
+		Map<String,String> snapshot = new TreeMap<>();
+		classpath.getFiles().forEach(entry -> {
+			if (entry.isDirectory()) {
+				ClassIndex.update(entry, indexDir).forEach((name, info) -> {
+					classes.put(name, info);
+					snapshot.put(name, Long.toHexString(info.checksum) + (info.constants ? CONSTANTS : ""));
+				});
+				try (Stream<Path> files = Files.walk(entry.toPath())) {
+					files.filter(file -> Files.isRegularFile(file) && !file.toString().endsWith(".class"))
+					     .forEach(file -> snapshot.put("file:" + file.toAbsolutePath(), Long.toHexString(checksum(file))));
+				} catch (IOException e) {
+					throw new Error("Couldn't list the files in " + entry.getPath(), e);
+				}
+			} else if (entry.isFile()) {
+				snapshot.put("jar:" + entry.getAbsolutePath(), entry.length() + "@" + entry.lastModified());
+			}
+		});
+		return snapshot;
+	}
+
+	private static long checksum(Path file) {
+		CRC32 crc = new CRC32();
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) > 0; ) crc.update(buffer, 0, n);
+		} catch (IOException e) {
+			throw new Error("Couldn't read " + file, e);
+		}
+		return crc.getValue();
+	}
+
+	private static boolean hasConstants(String classChecksum) {
+		return classChecksum != null && classChecksum.endsWith(CONSTANTS);
+	}
+
+	private static Map<String,String> nonClasses(Map<String,String> snapshot) {
+		Map<String,String> nonClasses = new TreeMap<>();
+		snapshot.forEach((key, value) -> { if (key.startsWith("jar:") || key.startsWith("file:")) nonClasses.put(key, value); });
+		return nonClasses;
+	}
+
+	private static Map<String,String> readBaseline(File baselineFile) {
+		Map<String,String> baseline = new TreeMap<>();
+		if (!baselineFile.isFile()) return baseline;
+		Properties properties = new Properties();
+		try (Reader in = Files.newBufferedReader(baselineFile.toPath(), StandardCharsets.UTF_8)) {
+			properties.load(in);
+		} catch (IOException e) {
+			return baseline; // as if there was no baseline
+		}
+		properties.stringPropertyNames().forEach(key -> baseline.put(key, properties.getProperty(key)));
+		return baseline;
+	}
+
+}
@@ -0,0 +1,178 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.api.tasks.testing.TestDescriptor;
+import org.gradle.api.tasks.testing.TestListener;
+import org.gradle.api.tasks.testing.TestResult;
+import org.gradle.process.CommandLineArgumentProvider;
+
+import it.bitnic.handycandy.gradle.util.GradleUtil;
+
+/**
+ * Settings for running tests in parallel, both in multiple forked JVMs and in multiple threads within each fork
+ * (JUnit Jupiter parallel execution).
+ * <p>
+ * By default the number of forks is derived from the available cores and memory, while JUnit parallel execution is
+ * off (tests must be written for it).
+ */
+public abstract class TestParallelismExtension {
+
+	/** Number of test JVMs to run in parallel (default: half the cores, limited to what fits in half the memory). */
+	public abstract Property<Integer> getMaxParallelForks();
+
+	/** Number of test classes after which a fork is replaced with a fresh JVM (default: 0, ie. never). */
+	public abstract Property<Long> getForkEvery();
+
+	/** Maximum heap size of each fork, in -Xmx format, unless the JVM profile sets one (default: 512m). */
+	public abstract Property<String> getForkHeap();
+
+	/** Whether to enable JUnit Jupiter parallel execution (default: false). */
+	public abstract Property<Boolean> getJunitParallel();
+
+	/** junit.jupiter.execution.parallel.mode.default: same_thread or concurrent (default: concurrent). */
+	public abstract Property<String> getJunitMethodMode();
+
+	/** junit.jupiter.execution.parallel.mode.classes.default: same_thread or concurrent (default: concurrent). */
+	public abstract Property<String> getJunitClassMode();
+
+	/** junit.jupiter.execution.parallel.config.strategy: dynamic or fixed (default: dynamic). */
+	public abstract Property<String> getJunitStrategy();
+
+	/** Threads per core with the dynamic strategy, or threads with the fixed one (default: 1). */
+	public abstract Property<Integer> getJunitParallelism();
+
+	/** How many of the slowest test classes to list at the end of each test task (default: 10, 0 to disable). */
+	public abstract Property<Integer> getSlowestClasses();
+
+	public TestParallelismExtension() {
+		getForkHeap().convention("512m");
+		getMaxParallelForks().convention(getForkHeap().map(TestParallelismExtension::defaultForks));
+		getForkEvery().convention(0L);
+		getJunitParallel().convention(false);
+		getJunitMethodMode().convention("concurrent");
+		getJunitClassMode().convention("concurrent");
+		getJunitStrategy().convention("dynamic");
+		getJunitParallelism().convention(1);
+		getSlowestClasses().convention(10);
+	}
+
+	/**
+	 * Applies the settings to a test task. Fork settings are applied once the project has been evaluated (so that they
+	 * can be set after the task got configured), and only if the task's own configuration didn't change them.
+	 */
+	public void configure(Test test) {
+		int forks = test.getMaxParallelForks();
+		long forkEvery = test.getForkEvery();
+		GradleUtil.whenEvaluated(test.getProject(), () -> {
+			if (test.getMaxParallelForks() == forks) test.setMaxParallelForks(getMaxParallelForks().get());
+			if (test.getForkEvery() == forkEvery) test.setForkEvery(getForkEvery().get());
+		});
+
+		test.getJvmArgumentProviders().add(new JunitParallelArgs(getJunitParallel().map(enabled -> enabled ? junitProperties() : Map.of())));
+		test.addTestListener(new SlowestClassesListener(test.getPath(), getSlowestClasses()));
+	}
+
+	private Map<String,String> junitProperties() {
+		String strategy = getJunitStrategy().get();
+		return Map.of( "junit.jupiter.execution.parallel.enabled",               "true",
+		               "junit.jupiter.execution.parallel.mode.default",          getJunitMethodMode().get(),
+		               "junit.jupiter.execution.parallel.mode.classes.default",  getJunitClassMode().get(),
+		               "junit.jupiter.execution.parallel.config.strategy",       strategy,
+		               "junit.jupiter.execution.parallel.config." + strategy + (strategy.equals("fixed") ? ".parallelism" : ".factor"),
+		                                                                         getJunitParallelism().get().toString() );
+	}
+
+	private static int defaultForks(String forkHeap) {
+		int byCores = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (!(os instanceof com.sun.management.OperatingSystemMXBean)) return byCores;
+		long memory = ((com.sun.management.OperatingSystemMXBean) os).getTotalMemorySize() / 2;
+		int byMemory = (int) Math.max(1, memory / parseSize(forkHeap));
+		return Math.min(byCores, byMemory);
+	}
+
+	private static long parseSize(String size) {
+		String s = size.trim().toLowerCase(Locale.ROOT);
+		long unit = 1;
+		switch (s.charAt(s.length() - 1)) {
+			case 'k': unit = 1L << 10; break;
+			case 'm': unit = 1L << 20; break;
+			case 'g': unit = 1L << 30; break;
+			default:  return Long.parseLong(s);
+		}
+		return Long.parseLong(s.substring(0, s.length() - 1)) * unit;
+	}
+
+	private static class JunitParallelArgs implements CommandLineArgumentProvider {
+
+		private final Provider<Map<String,String>> properties;
+
+		JunitParallelArgs(Provider<Map<String,String>> properties) {
+			this.properties = properties;
+		}
+
+		@Input public Provider<Map<String,String>> getProperties() {
+			return properties;
+		}
+
+		@Override
+		public Iterable<String> asArguments() {
+			return properties.get().entrySet().stream()
+			                 .map(entry -> "-D" + entry.getKey() + "=" + entry.getValue())
+			                 .sorted()
+			                 .collect(Collectors.toList());
+		}
+
+	}
+
+	private static class SlowestClassesListener implements TestListener {
+
+		private static final Logger LOGGER = Logging.getLogger(SlowestClassesListener.class);
+
+		private final String taskPath;
+		private final Provider<Integer> count;
+		private final Map<String,Long> millisByClass = new ConcurrentHashMap<>();
+
+		SlowestClassesListener(String taskPath, Provider<Integer> count) {
+			this.taskPath = taskPath;
+			this.count = count;
+		}
+
+		@Override public void beforeSuite(TestDescriptor suite) {}
+		@Override public void beforeTest(TestDescriptor testDescriptor) {}
+		@Override public void afterTest(TestDescriptor testDescriptor, TestResult result) {}
+
+		@Override
+		public void afterSuite(TestDescriptor suite, TestResult result) {
+			if (count.get() <= 0) return;
+			if (suite.getClassName() != null) {
+				millisByClass.merge(suite.getClassName(), result.getEndTime() - result.getStartTime(), Long::sum);
+			} else if (suite.getParent() == null && !millisByClass.isEmpty()) {
+				List<Map.Entry<String,Long>> slowest = new ArrayList<>(millisByClass.entrySet());
+				slowest.sort(Map.Entry.<String,Long>comparingByValue(Comparator.reverseOrder()));
+				LOGGER.lifecycle("Slowest test classes of " + taskPath + ":");
+				slowest.stream().limit(count.get()).forEach(entry -> {
+					LOGGER.lifecycle(String.format("\t%8d ms  %s", entry.getValue(), entry.getKey()));
+				});
+				millisByClass.clear();
+			}
+		}
+
+	}
+
+}
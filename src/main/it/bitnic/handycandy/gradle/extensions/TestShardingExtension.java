@@ -0,0 +1,229 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.gradle.api.Action;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.Task;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * Splits test classes across CI nodes: with {@code -Pshard=2/8} each test task only runs the 2nd of 8 slices of its
+ * test classes.
+ * <p>
+ * Classes are assigned by bin-packing on the durations recorded by previous runs, read from
+ * {@code <timingsDir>/<task name>.properties}; classes without history count as the average duration, which makes the
+ * assignment a plain round-robin when there is no history at all. Every node must see the same timings file to compute
+ * the same assignment.
+ * <p>
+ * Each test task writes the durations of the classes it ran (read back from the JUnit XML reports) to
+ * {@code <recordedTimingsDir>/<task name>.properties}. The {@code mergeTestTimings} task (see MergeTestTimingsTask)
+ * merges them into the timings dir, eg. {@code gradle test mergeTestTimings} on a nightly unsharded build, or with the
+ * files of all shards added to its {@code recordedTimings}; commit the result so that every node sees it.
+ */
+public abstract class TestShardingExtension {
+
+	/** The shard to run, as {@code <index>/<count>} with index starting at 1 (default: the {@code shard} property). */
+	public abstract Property<String> getShard();
+
+	/** Where the durations used to assign classes to shards are read from (default: {@code .test-timings} in the project directory). */
+	public abstract DirectoryProperty getTimingsDir();
+
+	/** Where test tasks write the durations of their classes (default: {@code build/test-timings}). */
+	public abstract DirectoryProperty getRecordedTimingsDir();
+
+	public void configure(Test test) {
+		Provider<String> shard = getShard().map(TestShardingExtension::parseShard);
+		// (missing files aren't allowed as input files, so the timings are only an input when they exist)
+		Provider<RegularFile> timingsFile = shard.flatMap(_shard -> getTimingsDir().file(test.getName() + ".properties"))
+		                                         .map(file -> file.getAsFile().isFile() ? file : null);
+		Provider<RegularFile> recordedTimingsFile = getRecordedTimingsDir().file(test.getName() + ".properties");
+
+		test.getInputs().property("shard", shard).optional(true);
+		test.getInputs().file(timingsFile).optional().withPropertyName("shardTimings").withPathSensitivity(PathSensitivity.NONE);
+		test.getOutputs().file(recordedTimingsFile).withPropertyName("recordedTimings");
+		// excluding the other shards' classes (rather than including ours) keeps the task's own includes working
+		// (the test classes dirs are looked up later, as the java plugin may not have set them yet)
+		FileCollection testClassesDirs = test.getProject().files((Callable<FileCollection>) test::getTestClassesDirs);
+		test.exclude(new OtherShardsSpec(testClassesDirs, shard, timingsFile));
+		test.doLast(new RecordTimings(test.getReports().getJunitXml().getOutputLocation(), recordedTimingsFile));
+	}
+
+	/** Checks a shard and returns it as {@code <index>/<count>}. */
+	private static String parseShard(String shard) {
+		String[] parts = shard.split("/");
+		int index, count;
+		try {
+			index = Integer.parseInt(parts[0].trim());
+			count = Integer.parseInt(parts[1].trim());
+		} catch (RuntimeException e) {
+			throw new InvalidUserDataException("Invalid shard '" + shard + "', expected <index>/<count> (eg. 2/8)", e);
+		}
+		if (parts.length != 2 || count < 1 || index < 1 || index > count) {
+			throw new InvalidUserDataException("Invalid shard '" + shard + "', expected <index>/<count> with 1 <= index <= count");
+		}
+		return index + "/" + count;
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	private static class OtherShardsSpec implements Spec<FileTreeElement> {
+
+		private final FileCollection testClassesDirs;
+		private final Provider<String> shard;
+		private final Provider<RegularFile> timingsFile;
+
+		private transient Set<String> shardClasses; // null when running all classes
+
+		private transient boolean assigned;
+
+		OtherShardsSpec(FileCollection testClassesDirs, Provider<String> shard, Provider<RegularFile> timingsFile) {
+			this.testClassesDirs = testClassesDirs;
+			this.shard = shard;
+			this.timingsFile = timingsFile;
+		}
+
+		@Override
+		public boolean isSatisfiedBy(FileTreeElement element) {
+			if (!assigned) {
+				shardClasses = shard.isPresent() ? assign() : null;
+				assigned = true;
+			}
+			if (shardClasses == null || element.isDirectory()) return false;
+			return !shardClasses.contains(className(element.getRelativePath().getPathString()));
+		}
+
+		private Set<String> assign() {
+			String[] parts = shard.get().split("/");
+			int index = Integer.parseInt(parts[0]) - 1;
+			int count = Integer.parseInt(parts[1]);
+
+			Set<String> classes = new TreeSet<>();
+			testClassesDirs.getAsFileTree().matching(p -> p.include("**/*.class")).visit(details -> {
+				if (!details.isDirectory()) classes.add(className(details.getRelativePath().getPathString()));
+			});
+
+			Map<String,Long> timings = timingsFile.isPresent() ? readTimings(timingsFile.get().getAsFile()) : new TreeMap<>();
+			long average = (long) timings.values().stream().mapToLong(Long::longValue).average().orElse(1);
+
+			// longest processing time first: biggest classes go to the least loaded shard (ties broken by name/index,
+			// so that all nodes come up with the same assignment)
+			List<String> bySize = new ArrayList<>(classes);
+			bySize.sort(Comparator.comparing((String cls) -> timings.getOrDefault(cls, average)).reversed());
+			long[] load = new long[count];
+			Set<String> mine = new TreeSet<>();
+			bySize.forEach(cls -> {
+				int target = 0;
+				for (int i = 1; i < count; i++) {
+					if (load[i] < load[target]) target = i;
+				}
+				load[target] += Math.max(1, timings.getOrDefault(cls, average));
+				if (target == index) mine.add(cls);
+			});
+			return mine;
+		}
+
+		private static String className(String classFilePath) {
+			String name = classFilePath.replaceFirst("\\.class$", "").replace('/', '.');
+			int nested = name.indexOf('$');
+			return nested < 0 ? name : name.substring(0, nested); // keep nested classes with their outer class
+		}
+
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	private static class RecordTimings implements Action<Task> {
+
+		private final Provider<Directory> junitXmlDir;
+		private final Provider<RegularFile> timingsFile;
+
+		RecordTimings(Provider<Directory> junitXmlDir, Provider<RegularFile> timingsFile) {
+			this.junitXmlDir = junitXmlDir;
+			this.timingsFile = timingsFile;
+		}
+
+		@Override
+		public void execute(Task task) {
+			File timingsFile = this.timingsFile.get().getAsFile();
+			File[] reports = junitXmlDir.get().getAsFile().listFiles((dir, name) -> name.startsWith("TEST-") && name.endsWith(".xml"));
+
+			Map<String,Long> timings = new TreeMap<>();
+			XMLInputFactory factory = XMLInputFactory.newFactory();
+			for (File report : reports == null ? new File[0] : reports) {
+				try (InputStream in = Files.newInputStream(report.toPath())) {
+					XMLStreamReader xml = factory.createXMLStreamReader(in);
+					while (!xml.isStartElement()) xml.next();
+					String name = xml.getAttributeValue(null, "name");
+					String time = xml.getAttributeValue(null, "time");
+					if (name != null && time != null) {
+						timings.merge(name.replaceFirst("\\$.*", ""), (long) (Double.parseDouble(time) * 1000), Long::sum);
+					}
+					xml.close();
+				} catch (IOException | XMLStreamException | NumberFormatException e) {
+					task.getLogger().warn("Couldn't read test timings from " + report.getPath(), e);
+				}
+			}
+
+			try {
+				Files.createDirectories(timingsFile.getParentFile().toPath());
+				try (Writer out = Files.newBufferedWriter(timingsFile.toPath(), StandardCharsets.UTF_8)) {
+					for (Map.Entry<String,Long> entry : timings.entrySet()) {
+						out.write(entry.getKey() + "=" + entry.getValue() + "\n");
+					}
+				}
+			} catch (IOException e) {
+				throw new Error("Couldn't write " + timingsFile.getPath(), e);
+			}
+		}
+
+	}
+
+	private static Map<String,Long> readTimings(File timingsFile) {
+		Map<String,Long> timings = new TreeMap<>();
+		if (!timingsFile.isFile()) return timings;
+		Properties properties = new Properties();
+		try (Reader in = Files.newBufferedReader(timingsFile.toPath(), StandardCharsets.UTF_8)) {
+			properties.load(in);
+		} catch (IOException e) {
+			throw new Error("Couldn't read " + timingsFile.getPath(), e);
+		}
+		properties.stringPropertyNames().forEach(cls -> {
+			try {
+				timings.put(cls, Long.parseLong(properties.getProperty(cls).trim()));
+			} catch (NumberFormatException e) {
+				// ignore garbage, it will be overwritten by the next run
+			}
+		});
+		return timings;
+	}
+
+}
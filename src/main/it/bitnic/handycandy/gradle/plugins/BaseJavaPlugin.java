@@ -1,17 +1,29 @@
 package it.bitnic.handycandy.gradle.plugins;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 
+import org.gradle.api.Action;
+import org.gradle.api.Task;
 import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.plugins.ide.api.GeneratorTask;
+import org.gradle.plugins.ide.eclipse.model.Classpath;
+import org.gradle.plugins.ide.eclipse.model.ClasspathEntry;
 import org.gradle.plugins.ide.eclipse.model.EclipseClasspath;
 import org.gradle.plugins.ide.eclipse.model.EclipseModel;
+import org.gradle.plugins.ide.eclipse.model.SourceFolder;
 
-import groovy.util.Node;
+import it.bitnic.handycandy.gradle.extensions.GitPropertiesCachingExtension;
 import it.bitnic.handycandy.gradle.tasks.MkDirsTask;
+import it.bitnic.handycandy.gradle.util.GradleUtil;
 
 public abstract class BaseJavaPlugin extends BasePlugin {
 
@@ -25,9 +37,13 @@ public abstract class BaseJavaPlugin extends BasePlugin {
 				"com.gorylenko.gradle-git-properties"
 			).forEach(project.getPluginManager()::apply);
 
-			// Use the same directory for both java sources and resources
-			project.getExtensions().getByType(SourceSetContainer.class).forEach(srcSet -> {
-				List<File> dirs = Arrays.asList(project.file("src/" + srcSet.getName()));
+			// Keep git.properties from defeating the build cache (tunable with gitPropertiesCaching { ... })
+			GitPropertiesCachingExtension gitPropertiesCaching = project.getExtensions().create("gitPropertiesCaching", GitPropertiesCachingExtension.class);
+			project.afterEvaluate(_project -> gitPropertiesCaching.configure(project));
+
+			// Use the same directory for both java sources and resources (for source sets added later on too)
+			project.getExtensions().getByType(SourceSetContainer.class).all(srcSet -> {
+				List<File> dirs = Arrays.asList(GradleUtil.sourceDir(project, srcSet.getName()));
 				srcSet.getJava().setSrcDirs(dirs);
 				srcSet.getResources().setSrcDirs(dirs);
 			});
@@ -61,30 +77,33 @@ public abstract class BaseJavaPlugin extends BasePlugin {
 			//   });
 			// });
 			//
-			// But that doesn't seem to work, so we'll have to resort to something even uglier:
+			// But that doesn't work as-is, because resolveDependencies() returns a new list of entries rather than the ones
+			// that are going to be written. Changing the entries of the merged classpath does work; we also need to drop
+			// duplicates, since gradle merges its (bin/) entries with the (build-eclipse/) ones already in .classpath
+			// instead of replacing them:
 			//
-			eclipseClasspath.getFile().whenMerged(__ -> {
-				eclipseClasspath.getFile().withXml(xml -> {
-					@SuppressWarnings("unchecked") List<Node> nodes = xml.asNode().breadthFirst();
-					nodes.forEach(node -> {
-						boolean isSrcDir = "classpathentry".equals(node.name())
-						                && "src".equals(node.attribute("kind"))
-						                && node.attributes().containsKey("output"); // referenced projects are kind="src" too
-						if (isSrcDir) {
-							@SuppressWarnings("unchecked") Map<Object,Object> attributes = node.attributes();
-							String oldoutput = attributes.getOrDefault("output", "").toString();
-							if (oldoutput.startsWith("bin/")) {
-								attributes.put("output", oldoutput.replaceFirst("^bin/", "build-eclipse/"));
-							}
-						}
-					});
+			eclipseClasspath.getFile().whenMerged(merged -> {
+				Classpath classpath = (Classpath) merged;
+				Set<ClasspathEntry> entries = new LinkedHashSet<>();
+				classpath.getEntries().forEach(classpathEntry -> {
+					if (classpathEntry instanceof SourceFolder) {
+						SourceFolder sourceFolder = (SourceFolder) classpathEntry;
+						sourceFolder.setOutput(GradleUtil.eclipseOutput(sourceFolder.getOutput()));
+					}
+					entries.add(classpathEntry);
+				});
+				classpath.setEntries(new ArrayList<>(entries));
+			});
+
+			// Gradle rewrites .project and .classpath on every run: give them back their timestamp when they didn't change,
+			// so that eclipse only refreshes the projects whose model changed (JDT settings: see EclipseJdtPrefsTask)
+			Stream.of("eclipseProject", "eclipseClasspath").forEach(taskName -> {
+				project.getTasks().named(taskName, GeneratorTask.class).configure(task -> {
+					File copy = new File(task.getTemporaryDir(), "previous");
+					task.doFirst(new SaveCopy(task.getOutputFile(), copy));
+					task.doLast(new RestoreTimestampIfUnchanged(task.getOutputFile(), copy));
 				});
 			});
-			//
-			// The above causes duplicate <classpathentry>s in .classpath files (couldn't find out why);
-			// this works around the problem
-			//
-			project.getTasks().getByName("eclipse").dependsOn(project.getTasks().getByName("cleanEclipse"));
 
 			// Set eclipse project name based on project group (eg. com.example.group:project)
 			eclipse.getProject().setName(project.getGroup().toString() + ":" + project.getName());
@@ -94,4 +113,55 @@ public abstract class BaseJavaPlugin extends BasePlugin {
 		});
 	}
 
+	private static class SaveCopy implements Action<Task> {
+
+		private final File file;
+		private final File copy;
+
+		SaveCopy(File file, File copy) {
+			this.file = file;
+			this.copy = copy;
+		}
+
+		@Override
+		public void execute(Task task) {
+			try {
+				if (file.isFile()) {
+					Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+				} else {
+					Files.deleteIfExists(copy.toPath());
+				}
+			} catch (IOException e) {
+				throw new Error("Couldn't copy " + file.getPath(), e);
+			}
+		}
+
+	}
+
+	private static class RestoreTimestampIfUnchanged implements Action<Task> {
+
+		private final File file;
+		private final File copy;
+
+		RestoreTimestampIfUnchanged(File file, File copy) {
+			this.file = file;
+			this.copy = copy;
+		}
+
+		@Override
+		public void execute(Task task) {
+			if (!copy.isFile() || !file.isFile()) return;
+			try {
+				if (Arrays.equals(Files.readAllBytes(file.toPath()), Files.readAllBytes(copy.toPath()))) {
+					Files.setLastModifiedTime(file.toPath(), Files.getLastModifiedTime(copy.toPath()));
+				} else {
+					task.getLogger().info("Updated " + file.getPath());
+				}
+			} catch (IOException e) {
+				throw new Error("Couldn't compare " + file.getPath() + " with its previous version", e);
+			}
+		}
+
+	}
+
 }
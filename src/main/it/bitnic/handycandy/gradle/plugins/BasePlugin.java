@@ -1,23 +1,36 @@
 package it.bitnic.handycandy.gradle.plugins;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
-import org.gradle.api.artifacts.dsl.RepositoryHandler;
-
+import org.gradle.api.provider.Provider;
+
+import it.bitnic.handycandy.gradle.extensions.RepositoriesExtension;
+import it.bitnic.handycandy.gradle.services.BuildTimingsService;
+import it.bitnic.handycandy.gradle.util.GradleUtil;
+
+/**
+ * Base class of our project plugins, which declare what they do with {@code configureProject()}/{@code configureTask()}
+ * blocks, run when the plugin is applied or as tasks get realized.
+ * <p>
+ * Actions added to tasks (doFirst/doLast, specs, argument providers...) are classes rather than lambdas, so that they can
+ * be serialized in the configuration cache; they are given providers rather than values, as our extensions are usually
+ * configured after the tasks are.
+ */
 public abstract class BasePlugin implements Plugin<Project> {
 
 	private final List<Consumer<Project>> onApply = new ArrayList<>();
 
 	protected void configureProject(Consumer<Project> configurator) {
 		onApply.add(configurator);
+		labels.put(configurator, "configureProject " + caller());
 	}
 
 	private final Map<Class<? extends Task>,List<Consumer<? extends Task>>> byTaskClassConfigurators = new LinkedHashMap<>();
@@ -25,54 +38,83 @@ public abstract class BasePlugin implements Plugin<Project> {
 
 	protected <T extends Task> void configureTasks(Class<T> taskClass, Consumer<T> action) {
 		byTaskClassConfigurators.computeIfAbsent(taskClass, _taskClass -> new ArrayList<>()).add(action);
+		labels.put(action, "configureTasks(" + taskClass.getSimpleName() + ") " + caller());
 	}
 
 	protected <T extends Task> void configureTask(String taskName, Consumer<T> action) {
 		byTaskNameConfigurators.computeIfAbsent(taskName, _taskName -> new ArrayList<>()).add(action);
+		labels.put(action, "configureTask(" + taskName + ") " + caller());
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+	// Timing of the configuration actions (see BuildTimingsService)
+	// -----------------------------------------------------------------------------------------------------------------
+
+	private final Map<Object,String> labels = new IdentityHashMap<>(); // configuration action -> where it's declared
+
+	// where the action is declared, skipping the configureXxx() helpers of subclasses too
+	private static String caller() {
+		return StackWalker.getInstance().walk(frames -> frames.filter(frame -> !frame.getClassName().equals(BasePlugin.class.getName())
+		                                                                       && !frame.getMethodName().startsWith("configure"))
+		                                                      .findFirst()
+		                                                      .map(frame -> frame.getFileName() + ":" + frame.getLineNumber())
+		                                                      .orElse("?"));
+	}
+
+	private void run(Provider<BuildTimingsService> timings, Project project, Object configurator, Runnable action) {
+		if (timings == null) {
+			action.run();
+			return;
+		}
+		long start = System.nanoTime();
+		action.run();
+		timings.get().configured(project.getPath(), labels.get(configurator), System.nanoTime() - start);
 	}
 
 	@Override
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public final void apply(Project project) {
 
-		// configure default repositories
+		// configure default repositories (after evaluation, so that repositoryConventions { ... } can tune them)
+
+		if (project.getExtensions().findByType(RepositoriesExtension.class) == null) { // only once, for the first of our plugins
+			RepositoriesExtension repos = project.getExtensions().create("repositoryConventions", RepositoriesExtension.class);
+			repos.getJcenter().convention(project.getProviders().gradleProperty("repositories.jcenter").map(Boolean::parseBoolean).orElse(false));
+			repos.getOfflineMirror().convention(project.getProviders().gradleProperty("repositories.offlineMirror")
+			                                           .map(path -> project.getIsolated().getRootProject().getProjectDirectory().dir(path)));
+			project.afterEvaluate(_project -> repos.configure(project));
+		}
 
-		RepositoryHandler repos = project.getRepositories();
-		Stream.of(
-			// repos.mavenLocal(),
-			repos.mavenCentral(),
-			repos.jcenter(),
-			repos.google()
-		).forEach(repos::add);
+		// time our configuration actions and all task executions (unless -PbuildTimings=false)
+
+		Provider<BuildTimingsService> timings = BuildTimingsService.register(project);
+
+		// let configuration actions wait for the evaluation of the project (see GradleUtil.whenEvaluated)
+
+		GradleUtil.trackEvaluation(project);
 
 		// set project group based on project path
 
-		project.setGroup(project.getRootProject().getName() + parentPath(project).replace(':', '.'));
+		project.setGroup(project.getIsolated().getRootProject().getName() + parentPath(project).replace(':', '.'));
 
 		// run subclass-defined actions
 
-		onApply.forEach(action -> action.accept(project));
+		onApply.forEach(action -> run(timings, project, action, () -> action.accept(project)));
 
-		// setup task configurations to be run at the very end
+		// setup task configurations to be run lazily, as tasks get realized
 
-		project.getGradle().getTaskGraph().whenReady(tg -> {
-			tg.getAllTasks().stream().forEach(task -> {
-				byTaskClassConfigurators.entrySet().forEach(entry -> {
-					if (entry.getKey().isAssignableFrom(task.getClass())) {
-						entry.getValue().forEach(configurator -> {
-							((Consumer)configurator).accept(task);
-						});
-					}
-				});
-				byTaskNameConfigurators.entrySet().forEach(entry -> {
-					if (entry.getKey().equals(task.getName())) {
-						entry.getValue().forEach(configurator -> {
-							((Consumer)configurator).accept(task);
-						});
-					}
-				});
+		byTaskClassConfigurators.forEach((taskClass, configurators) -> {
+			project.getTasks().withType(taskClass).configureEach(task -> {
+				configurators.forEach(configurator -> run(timings, project, configurator, () -> ((Consumer)configurator).accept(task)));
 			});
 		});
+		if (!byTaskNameConfigurators.isEmpty()) {
+			project.getTasks().configureEach(task -> {
+				byTaskNameConfigurators.getOrDefault(task.getName(), List.of()).forEach(configurator -> {
+					run(timings, project, configurator, () -> ((Consumer)configurator).accept(task));
+				});
+			});
+		}
 	}
 
 	private static String parentPath(Project project) {
@@ -1,6 +1,19 @@
 package it.bitnic.handycandy.gradle.plugins;
 
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.gradle.api.plugins.JavaApplication;
+import org.gradle.jvm.application.tasks.CreateStartScripts;
+
+import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar;
+
+import it.bitnic.handycandy.gradle.extensions.FatJarExtension;
+import it.bitnic.handycandy.gradle.extensions.JvmProfileExtension;
+import it.bitnic.handycandy.gradle.tasks.AppCdsTask;
+import it.bitnic.handycandy.gradle.tasks.JlinkTask;
 
 public class JavaApplicationPlugin extends BaseJavaPlugin {
 
@@ -12,17 +25,66 @@ public class JavaApplicationPlugin extends BaseJavaPlugin {
 			).forEach(project.getPluginManager()::apply);
 		});
 
-		// Configure the shadow plugin as per groovy:
-		//
-		// shadowJar {
-		//     mergeServiceFiles()
-		// }
-		configureTask("shadowJar", shadowJar -> {
-			try {
-				shadowJar.getClass().getMethod("mergeServiceFiles").invoke(shadowJar);
-			} catch (Exception e) {
-				throw new Error(e);
-			}
+		// Enable java preview features in the start scripts too (after evaluation, so that the build script can still
+		// assign applicationDefaultJvmArgs)
+		configureProject(project -> {
+			project.afterEvaluate(_project -> {
+				JavaApplication application = project.getExtensions().getByType(JavaApplication.class);
+				List<String> jvmArgs = StreamSupport.stream(application.getApplicationDefaultJvmArgs().spliterator(), false)
+				                                    .collect(Collectors.toList());
+				jvmArgs.add("--enable-preview");
+				application.setApplicationDefaultJvmArgs(jvmArgs);
+			});
+		});
+
+		// Create an AppCDS archive for each installed distribution, used by its start scripts and by the matching run task
+		// (which then runs the installed jars) once a training run is configured (see AppCdsTask). The archive only works
+		// with the very jars it was trained with, so distribution archives can't ship it: the start scripts just don't
+		// find it there, which the JVM silently ignores with -Xshare:auto.
+		configureProject(project -> {
+			AppCdsTask.installForDistribution(project, "appCds", "run", "startScripts", "installDist");
+			AppCdsTask.installForDistribution(project, "appCdsShadow", "runShadow", "startShadowScripts", "installShadowDist");
+		});
+
+		// Package the shadow jar with a minimal java runtime (jdeps + jlink)
+		configureProject(project -> {
+			JlinkTask.install(project, "jlink", "shadowJar");
+		});
+
+		// Use the JVM profile (see RootProjectPlugin) in the start scripts and in the jlink image. Not through
+		// applicationDefaultJvmArgs, which the run tasks inherit: they would end up with their own flags and these too
+		// (eg. two garbage collectors, which the JVM refuses).
+		configureProject(project -> {
+			JvmProfileExtension profile = project.getExtensions().findByType(JvmProfileExtension.class);
+			if (profile == null) return; // without the root project plugin
+			project.afterEvaluate(_project -> {
+				project.getTasks().withType(CreateStartScripts.class).configureEach(startScripts -> {
+					List<String> jvmArgs = StreamSupport.stream(startScripts.getDefaultJvmOpts().spliterator(), false)
+					                                    .collect(Collectors.toList());
+					jvmArgs.addAll(profile.forTask(startScripts.getName()).getEffectiveFlags());
+					startScripts.setDefaultJvmOpts(jvmArgs);
+				});
+			});
+		});
+		configureTask("jlink", (JlinkTask jlink) -> {
+			JavaApplication application = jlink.getProject().getExtensions().getByType(JavaApplication.class);
+			JvmProfileExtension profile = jlink.getProject().getExtensions().findByType(JvmProfileExtension.class);
+			if (profile == null) return;
+			jlink.getJvmArgs().convention(jlink.getProject().provider(() -> {
+				List<String> jvmArgs = StreamSupport.stream(application.getApplicationDefaultJvmArgs().spliterator(), false)
+				                                    .collect(Collectors.toList());
+				jvmArgs.addAll(profile.forTask(jlink.getName()).getEffectiveFlags());
+				return jvmArgs;
+			}));
+		});
+
+		// Configure the shadow jar: merged service files, reproducible, minimized (tunable with fatJar { ... })
+		configureProject(project -> {
+			project.getExtensions().create("fatJar", FatJarExtension.class);
+		});
+		configureTask("shadowJar", (ShadowJar shadowJar) -> {
+			shadowJar.getProject().getExtensions().getByType(FatJarExtension.class)
+			         .configure(shadowJar, shadowJar.getProject().getConfigurations().getByName("runtimeClasspath"));
 		});
 	}
 
@@ -1,15 +1,115 @@
 package it.bitnic.handycandy.gradle.plugins;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Stream;
 
+import org.gradle.api.artifacts.ConfigurationContainer;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.process.CommandLineArgumentProvider;
+
+import it.bitnic.handycandy.gradle.extensions.BenchmarksExtension;
+import it.bitnic.handycandy.gradle.tasks.JmhCompareTask;
+import it.bitnic.handycandy.gradle.tasks.JmhTask;
+
 public class JavaLibraryPlugin extends BaseJavaPlugin {
 
+	/** The task running the JMH benchmarks (see JmhTask). */
+	public static final String JMH_TASK_NAME = "jmh";
+
 	{
 		configureProject(project -> {
 			Stream.of(
 				"java-library"
 			).forEach(project.getPluginManager()::apply);
 		});
+
+		// Add a jmh source set for JMH benchmarks, with tasks to run them (jmh) and to check them against a baseline
+		// (jmhCompare); tunable with benchmarks { ... }
+		configureProject(project -> {
+			BenchmarksExtension benchmarks = project.getExtensions().create("benchmarks", BenchmarksExtension.class);
+			benchmarks.getResultsFile().convention(project.getLayout().getBuildDirectory().file("reports/jmh/results.json"));
+			benchmarks.getBaselineFile().convention(project.getLayout().getProjectDirectory().file(".jmh-baseline.json"));
+
+			// benchmarks see the main classes and dependencies (and get src/jmh from BaseJavaPlugin, like any source set)
+			SourceSetContainer sourceSets = project.getExtensions().getByType(SourceSetContainer.class);
+			SourceSet main = sourceSets.getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+			SourceSet jmh = sourceSets.create("jmh", srcSet -> {
+				srcSet.setCompileClasspath(srcSet.getCompileClasspath().plus(main.getOutput()));
+				srcSet.setRuntimeClasspath(srcSet.getRuntimeClasspath().plus(main.getOutput()));
+			});
+			ConfigurationContainer configurations = project.getConfigurations();
+			configurations.getByName(jmh.getImplementationConfigurationName()).extendsFrom(configurations.getByName(main.getImplementationConfigurationName()));
+			configurations.getByName(jmh.getRuntimeOnlyConfigurationName()).extendsFrom(configurations.getByName(main.getRuntimeOnlyConfigurationName()));
+
+			// the generator runs as an annotation processor (so the apt plugins set it up in the IDEs too)
+			project.getDependencies().addProvider(jmh.getImplementationConfigurationName(), benchmarks.getVersion().map(version -> "org.openjdk.jmh:jmh-core:" + version));
+			project.getDependencies().addProvider(jmh.getAnnotationProcessorConfigurationName(), benchmarks.getVersion().map(version -> "org.openjdk.jmh:jmh-generator-annprocess:" + version));
+
+			project.getTasks().register(JMH_TASK_NAME, JmhTask.class, run -> {
+				run.setClasspath(jmh.getRuntimeClasspath());
+				run.getArgumentProviders().add(new JmhArgs(benchmarks));
+			});
+			JmhCompareTask.install(project, "jmhCompare", JMH_TASK_NAME);
+		});
+	}
+
+	private static class JmhArgs implements CommandLineArgumentProvider {
+
+		private final Provider<List<String>> includes;
+		private final Provider<Integer> forks;
+		private final Provider<Integer> warmupIterations;
+		private final Provider<Integer> iterations;
+		private final Provider<RegularFile> resultsFile;
+
+		JmhArgs(BenchmarksExtension benchmarks) {
+			this.includes = benchmarks.getIncludes();
+			this.forks = benchmarks.getForks();
+			this.warmupIterations = benchmarks.getWarmupIterations();
+			this.iterations = benchmarks.getIterations();
+			this.resultsFile = benchmarks.getResultsFile();
+		}
+
+		@Input public Provider<List<String>> getIncludes() {
+			return includes;
+		}
+
+		@Input public Provider<Integer> getForks() {
+			return forks;
+		}
+
+		@Input public Provider<Integer> getWarmupIterations() {
+			return warmupIterations;
+		}
+
+		@Input public Provider<Integer> getIterations() {
+			return iterations;
+		}
+
+		@OutputFile public Provider<RegularFile> getResultsFile() {
+			return resultsFile;
+		}
+
+		@Override
+		public Iterable<String> asArguments() {
+			File results = resultsFile.get().getAsFile();
+			results.getParentFile().mkdirs();
+			List<String> args = new ArrayList<>(includes.get());
+			args.addAll(List.of( "-f",  forks.get().toString(),
+			                     "-wi", warmupIterations.get().toString(),
+			                     "-i",  iterations.get().toString(),
+			                     "-foe", "true",
+			                     "-rf", "json",
+			                     "-rff", results.getAbsolutePath() ));
+			return args;
+		}
+
 	}
 
 }
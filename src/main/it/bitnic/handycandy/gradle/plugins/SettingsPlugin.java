@@ -0,0 +1,34 @@
+package it.bitnic.handycandy.gradle.plugins;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.invocation.Gradle;
+
+/**
+ * Applies {@link RootProjectPlugin} to every project of the build.
+ * <p>
+ * Each project applies the conventions to itself as it gets configured, instead of having the root project reach into
+ * its subprojects, so that the build works with parallel/isolated project configuration.
+ * <p>
+ * The build cache is left alone: turn it on with {@code org.gradle.caching=true} in gradle.properties (a plugin can't
+ * turn it on without also overriding {@code --no-build-cache}).
+ */
+public class SettingsPlugin implements Plugin<Settings> {
+
+	private static final String APPLIED = SettingsPlugin.class.getName();
+
+	/** Whether this plugin has been applied to the settings of the build. */
+	static boolean isApplied(Gradle gradle) {
+		return gradle.getExtensions().getExtraProperties().has(APPLIED);
+	}
+
+	@Override
+	public void apply(Settings settings) {
+		settings.getGradle().getExtensions().getExtraProperties().set(APPLIED, true);
+
+		settings.getGradle().getLifecycle().beforeProject(project -> {
+			project.getPluginManager().apply(RootProjectPlugin.class);
+		});
+	}
+
+}
@@ -0,0 +1,332 @@
+package it.bitnic.handycandy.gradle.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.services.BuildServiceRegistration;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskExecutionResult;
+import org.gradle.tooling.events.task.TaskFailureResult;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskOperationDescriptor;
+import org.gradle.tooling.events.task.TaskOperationResult;
+import org.gradle.tooling.events.task.TaskSkippedResult;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+/**
+ * Times the configuration actions of our plugins and the execution of all tasks, and writes a report at the end of the
+ * build (build/reports/build-timings/ in the root project: JSON and HTML), appending a summary line to a history file
+ * (.gradle/build-timings-history.jsonl, which keeps the last 1000 builds) for trending.
+ * <p>
+ * Compile tasks configured by JavaCompilerExtension are also listed with whether they were incremental and why they
+ * ran (the recompilation causes).
+ * <p>
+ * Disable with -PbuildTimings=false. When the configuration comes from the configuration cache, no configuration
+ * action runs and the report only covers task execution.
+ */
+public abstract class BuildTimingsService implements BuildService<BuildTimingsService.Params>, OperationCompletionListener, AutoCloseable {
+
+	public interface Params extends BuildServiceParameters {
+
+		DirectoryProperty getReportsDir();
+
+		RegularFileProperty getHistoryFile();
+
+		/** How many past builds to show in the HTML report. */
+		Property<Integer> getHistoryShown();
+
+		/** How many past builds to keep in the history file. */
+		Property<Integer> getHistoryKept();
+
+	}
+
+	private static final String NAME = "buildTimings";
+
+	/**
+	 * Registers the service (and its task completion listener) the first time it's called in a build, returns null if
+	 * the timings are disabled.
+	 */
+	public static Provider<BuildTimingsService> register(Project project) {
+		if (!project.getProviders().gradleProperty(NAME).map(value -> !"false".equals(value)).getOrElse(true)) {
+			return null;
+		}
+		boolean registered = project.getGradle().getSharedServices().getRegistrations().findByName(NAME) != null;
+		File rootDir = project.getIsolated().getRootProject().getProjectDirectory().getAsFile();
+		Provider<BuildTimingsService> service = project.getGradle().getSharedServices().registerIfAbsent(NAME, BuildTimingsService.class, spec -> {
+			spec.getParameters().getReportsDir().set(new File(rootDir, "build/reports/build-timings"));
+			spec.getParameters().getHistoryFile().set(new File(rootDir, ".gradle/build-timings-history.jsonl"));
+			spec.getParameters().getHistoryShown().set(30);
+			spec.getParameters().getHistoryKept().set(1000);
+		});
+		if (!registered) {
+			project.getObjects().newInstance(ListenerRegistration.class).getRegistry().onTaskCompletion(service);
+		}
+		return service;
+	}
+
+	/** The service registered by {@link #register(Project)}, or null if the timings are disabled. */
+	@SuppressWarnings("unchecked")
+	public static Provider<BuildTimingsService> find(Project project) {
+		BuildServiceRegistration<?,?> registration = project.getGradle().getSharedServices().getRegistrations().findByName(NAME);
+		return registration == null ? null : (Provider<BuildTimingsService>) registration.getService();
+	}
+
+	/** Gives access to the listener registry, which is only injected into objects created by gradle. */
+	public abstract static class ListenerRegistration {
+
+		@Inject public abstract BuildEventsListenerRegistry getRegistry();
+
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	private final Map<String,Map<String,long[]>> configuration = new ConcurrentHashMap<>(); // project -> label -> count, nanos
+	private final List<TaskTiming> tasks = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String,List<String>> compilations = new ConcurrentHashMap<>(); // task -> non incremental processors
+
+	/** Records the time taken by a configuration action (a configureProject/configureTasks/configureTask one). */
+	public void configured(String projectPath, String label, long nanos) {
+		long[] timing = configuration.computeIfAbsent(projectPath, _path -> new ConcurrentHashMap<>())
+		                             .computeIfAbsent(label, _label -> new long[2]);
+		synchronized (timing) {
+			timing[0]++;
+			timing[1] += nanos;
+		}
+	}
+
+	/** Records that a compile task is executing, and the annotation processors that keep it from being incremental. */
+	public void compiling(String taskPath, List<String> nonIncrementalProcessors) {
+		compilations.put(taskPath, nonIncrementalProcessors);
+	}
+
+	@Override
+	public void onFinish(FinishEvent event) {
+		if (!(event instanceof TaskFinishEvent)) return;
+		TaskOperationDescriptor descriptor = ((TaskFinishEvent) event).getDescriptor();
+		TaskOperationResult result = ((TaskFinishEvent) event).getResult();
+		String outcome = result instanceof TaskFailureResult ? "failed"
+		               : result instanceof TaskSkippedResult ? "skipped"
+		               : ((TaskSuccessResult) result).isFromCache() ? "fromCache"
+		               : ((TaskSuccessResult) result).isUpToDate() ? "upToDate"
+		               : "executed";
+		TaskTiming timing = new TaskTiming(descriptor.getTaskPath(), result.getStartTime(), result.getEndTime(), outcome);
+		if (result instanceof TaskExecutionResult && "executed".equals(outcome)) {
+			timing.incremental = ((TaskExecutionResult) result).isIncremental();
+			timing.executionReasons = ((TaskExecutionResult) result).getExecutionReasons();
+		}
+		tasks.add(timing);
+	}
+
+	@Override
+	public void close() throws IOException {
+		Map<String,Object> report = report();
+		File reportsDir = getParameters().getReportsDir().get().getAsFile();
+		reportsDir.mkdirs();
+		Files.writeString(new File(reportsDir, "build-timings.json").toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(report)));
+
+		File historyFile = getParameters().getHistoryFile().get().getAsFile();
+		historyFile.getParentFile().mkdirs();
+		Map<String,Object> summary = new LinkedHashMap<>(report);
+		summary.keySet().retainAll(List.of("time", "configurationMs", "executionMs", "criticalPathMs", "outcomes"));
+		List<String> history = historyFile.isFile() ? new ArrayList<>(Files.readAllLines(historyFile.toPath())) : new ArrayList<>();
+		history.removeIf(String::isBlank);
+		history.add(JsonOutput.toJson(summary));
+		history = last(history, getParameters().getHistoryKept().get());
+		Files.write(historyFile.toPath(), history, StandardCharsets.UTF_8);
+
+		Files.writeString(new File(reportsDir, "build-timings.html").toPath(), html(report, parse(last(history, getParameters().getHistoryShown().get()))));
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	private Map<String,Object> report() {
+		Map<String,Object> report = new LinkedHashMap<>();
+		report.put("time", Instant.now().toString());
+
+		Map<String,Object> projects = new TreeMap<>();
+		long configurationNanos = 0;
+		for (Map.Entry<String,Map<String,long[]>> project : configuration.entrySet()) {
+			long projectNanos = project.getValue().values().stream().mapToLong(timing -> timing[1]).sum();
+			configurationNanos += projectNanos;
+			Map<String,Object> configurators = new LinkedHashMap<>();
+			project.getValue().entrySet().stream()
+			       .sorted((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]))
+			       .forEach(configurator -> configurators.put(configurator.getKey(), Map.of( "count", configurator.getValue()[0],
+			                                                                                 "ms",    millis(configurator.getValue()[1]) )));
+			projects.put(project.getKey(), Map.of("ms", millis(projectNanos), "configurators", configurators));
+		}
+		report.put("configurationMs", millis(configurationNanos));
+
+		List<TaskTiming> byDuration;
+		synchronized (tasks) {
+			byDuration = new ArrayList<>(tasks);
+		}
+		byDuration.sort(Comparator.comparingLong((TaskTiming task) -> task.end - task.start).reversed());
+		long start = byDuration.stream().mapToLong(task -> task.start).min().orElse(0);
+		long end = byDuration.stream().mapToLong(task -> task.end).max().orElse(0);
+		report.put("executionMs", end - start);
+
+		Map<String,Long> outcomes = new TreeMap<>();
+		byDuration.forEach(task -> outcomes.merge(task.outcome, 1L, Long::sum));
+		report.put("outcomes", outcomes);
+		long avoidable = byDuration.stream().filter(task -> !"skipped".equals(task.outcome)).count();
+		report.put("upToDateRate", rate(outcomes.getOrDefault("upToDate", 0L), avoidable));
+		report.put("fromCacheRate", rate(outcomes.getOrDefault("fromCache", 0L), avoidable));
+
+		List<TaskTiming> criticalPath = criticalPath(byDuration);
+		report.put("criticalPathMs", criticalPath.isEmpty() ? 0 : criticalPath.get(criticalPath.size() - 1).end - criticalPath.get(0).start);
+		report.put("criticalPath", criticalPath.stream().map(task -> task.path).collect(Collectors.toList()));
+
+		report.put("compilations", byDuration.stream()
+		                                     .filter(task -> compilations.containsKey(task.path))
+		                                     .map(task -> Map.of( "path",                     task.path,
+		                                                          "ms",                       task.end - task.start,
+		                                                          "incremental",              task.incremental,
+		                                                          "reasons",                  task.executionReasons,
+		                                                          "nonIncrementalProcessors", compilations.get(task.path) ))
+		                                     .collect(Collectors.toList()));
+		report.put("projects", projects);
+		report.put("tasks", byDuration.stream()
+		                              .map(task -> Map.of("path", task.path, "ms", task.end - task.start, "outcome", task.outcome))
+		                              .collect(Collectors.toList()));
+		return report;
+	}
+
+	/**
+	 * The chain of tasks ending with the last one to finish, where each task is preceded by the last one that finished
+	 * before it started (task dependencies aren't available to listeners, so this is what the timeline says held each
+	 * task back).
+	 */
+	private static List<TaskTiming> criticalPath(List<TaskTiming> tasks) {
+		LinkedList<TaskTiming> path = new LinkedList<>();
+		TaskTiming task = tasks.stream().max(Comparator.comparingLong(timing -> timing.end)).orElse(null);
+		while (task != null) {
+			path.addFirst(task);
+			long start = task.start;
+			task = tasks.stream()
+			            .filter(timing -> timing.end <= start && timing.start < start) // (so that zero-length tasks can't loop)
+			            .max(Comparator.comparingLong(timing -> timing.end))
+			            .orElse(null);
+		}
+		return path;
+	}
+
+	private static List<String> last(List<String> lines, int count) {
+		return lines.subList(Math.max(0, lines.size() - count), lines.size());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String,Object>> parse(List<String> history) {
+		return history.stream()
+		              .map(line -> (Map<String,Object>) new JsonSlurper().parseText(line))
+		              .collect(Collectors.toList());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static String html(Map<String,Object> report, List<Map<String,Object>> history) {
+		StringBuilder html = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Build timings</title>"
+		                                       + "<style>body{font-family:sans-serif} td{padding:0 1em} td.n{text-align:right}</style></head><body>\n");
+		html.append("<h1>Build timings</h1>\n<p>").append(report.get("time"))
+		    .append(": configuration ").append(report.get("configurationMs")).append(" ms (our plugins), execution ")
+		    .append(report.get("executionMs")).append(" ms, critical path ").append(report.get("criticalPathMs")).append(" ms")
+		    .append("<br>Tasks: ").append(report.get("outcomes"))
+		    .append(String.format(", up-to-date %.0f%%, from cache %.0f%%", 100 * (double) report.get("upToDateRate"), 100 * (double) report.get("fromCacheRate")))
+		    .append("</p>\n");
+
+		html.append("<h2>Critical path</h2>\n<p>").append(((List<String>) report.get("criticalPath")).stream().map(BuildTimingsService::escape).collect(Collectors.joining(" &rarr; "))).append("</p>\n");
+
+		html.append("<h2>Tasks</h2>\n<table><tr><th>ms</th><th>outcome</th><th>task</th></tr>\n");
+		((List<Map<String,Object>>) report.get("tasks")).forEach(task -> {
+			html.append("<tr><td class=\"n\">").append(task.get("ms")).append("</td><td>").append(task.get("outcome"))
+			    .append("</td><td>").append(escape((String) task.get("path"))).append("</td></tr>\n");
+		});
+		html.append("</table>\n");
+
+		html.append("<h2>Compilations</h2>\n<table><tr><th>ms</th><th>incremental</th><th>task</th><th>why</th></tr>\n");
+		((List<Map<String,Object>>) report.get("compilations")).forEach(compilation -> {
+			List<String> why = new ArrayList<>((List<String>) compilation.get("reasons"));
+			((List<String>) compilation.get("nonIncrementalProcessors")).forEach(processor -> why.add("non incremental annotation processor " + processor));
+			html.append("<tr><td class=\"n\">").append(compilation.get("ms")).append("</td><td>").append(compilation.get("incremental"))
+			    .append("</td><td>").append(escape((String) compilation.get("path"))).append("</td><td>")
+			    .append(why.stream().map(BuildTimingsService::escape).collect(Collectors.joining("<br>"))).append("</td></tr>\n");
+		});
+		html.append("</table>\n");
+
+		html.append("<h2>Configuration</h2>\n<table><tr><th>ms</th><th>count</th><th>project / configuration action</th></tr>\n");
+		((Map<String,Map<String,Object>>) report.get("projects")).forEach((project, timings) -> {
+			html.append("<tr><td class=\"n\"><b>").append(timings.get("ms")).append("</b></td><td></td><td><b>").append(escape(project)).append("</b></td></tr>\n");
+			((Map<String,Map<String,Object>>) timings.get("configurators")).forEach((configurator, timing) -> {
+				html.append("<tr><td class=\"n\">").append(timing.get("ms")).append("</td><td class=\"n\">").append(timing.get("count"))
+				    .append("</td><td>").append(escape(configurator)).append("</td></tr>\n");
+			});
+		});
+		html.append("</table>\n");
+
+		html.append("<h2>History</h2>\n<table><tr><th>time</th><th>configuration ms</th><th>execution ms</th><th>critical path ms</th><th>tasks</th></tr>\n");
+		history.forEach(build -> {
+			html.append("<tr><td>").append(build.get("time")).append("</td><td class=\"n\">").append(build.get("configurationMs"))
+			    .append("</td><td class=\"n\">").append(build.get("executionMs")).append("</td><td class=\"n\">").append(build.get("criticalPathMs"))
+			    .append("</td><td>").append(build.get("outcomes")).append("</td></tr>\n");
+		});
+		html.append("</table>\n</body></html>\n");
+		return html.toString();
+	}
+
+	private static double millis(long nanos) {
+		return Math.round(nanos / 10_000.0) / 100.0;
+	}
+
+	private static double rate(long count, long total) {
+		return total == 0 ? 0 : (double) count / total;
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	private static class TaskTiming {
+
+		final String path;
+		final long start;
+		final long end;
+		final String outcome;
+		boolean incremental; // for executed tasks only
+		List<String> executionReasons = List.of();
+
+		TaskTiming(String path, long start, long end, String outcome) {
+			this.path = path;
+			this.start = start;
+			this.end = end;
+			this.outcome = outcome;
+		}
+
+	}
+
+}
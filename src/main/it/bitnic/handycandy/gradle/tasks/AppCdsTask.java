@@ -0,0 +1,250 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import javax.inject.Inject;
+
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.plugins.JavaApplication;
+import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.Sync;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.jvm.application.tasks.CreateStartScripts;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.gradle.jvm.toolchain.JavaToolchainService;
+import org.gradle.process.CommandLineArgumentProvider;
+import org.gradle.process.ExecOperations;
+
+import it.bitnic.handycandy.gradle.util.GradleUtil;
+
+/**
+ * Creates an AppCDS (application class data sharing) archive for a classpath, by doing a training run of the
+ * application with {@code -XX:ArchiveClassesAtExit}.
+ * <p>
+ * The training run must terminate by itself, so it is opt-in: the task is skipped unless it is given {@link #getArgs()}
+ * (to run the application's main class with) or a warm-up entry point as {@link #getMainClass()}.
+ * <p>
+ * The archive only works with the very jars it was trained with: same paths, same timestamps. The task isn't cacheable
+ * for that reason, and because the archive of a distribution goes in its install directory, next to its jars.
+ */
+public abstract class AppCdsTask extends DefaultTask {
+
+	public AppCdsTask() {
+		setGroup("build");
+		setDescription("Creates an AppCDS archive with a training run of the application");
+		onlyIf(new HasTrainingRun());
+	}
+
+	@InputFiles @PathSensitive(PathSensitivity.ABSOLUTE) public abstract ConfigurableFileCollection getClasspath(); // the archive records the paths
+
+	@Input public Provider<List<Long>> getClasspathTimestamps() { // and the timestamps
+		return getClasspath().getElements().map(files -> {
+			return files.stream().map(file -> file.getAsFile().lastModified()).collect(Collectors.toList());
+		});
+	}
+
+	/** The class to run for training (default: the application's main class, if {@link #getArgs()} are set). */
+	@Input @Optional public abstract Property<String> getMainClass();
+
+	@Input public abstract ListProperty<String> getArgs();
+
+	@Input public abstract ListProperty<String> getJvmArgs();
+
+	@Nested public abstract Property<JavaLauncher> getJavaLauncher(); // so that a different JDK invalidates the archive
+
+	/**
+	 * Whether to time the training run without the archive and with it (two more runs), which shows what the archive
+	 * saves on the whole training workload, not just on startup (default: true).
+	 */
+	@Internal public abstract Property<Boolean> getReportTimings();
+
+	@OutputFile public abstract RegularFileProperty getArchiveFile();
+
+	@Inject protected abstract ExecOperations getExecOperations();
+
+	/** Whether a training run is configured, ie. whether the task creates an archive. */
+	public boolean hasTrainingRun() {
+		return getMainClass().isPresent();
+	}
+
+	public static TaskProvider<AppCdsTask> install(Project project, String taskName, FileCollection classpath) {
+		JavaApplication application = project.getExtensions().getByType(JavaApplication.class);
+		JavaPluginExtension java = project.getExtensions().getByType(JavaPluginExtension.class);
+		JavaToolchainService toolchains = project.getExtensions().getByType(JavaToolchainService.class);
+		return project.getTasks().register(taskName, AppCdsTask.class, appCds -> {
+			appCds.getClasspath().from(classpath);
+			// no training run by default: the application's main class may well run until it is stopped
+			appCds.getMainClass().convention(application.getMainClass().zip(appCds.getArgs(), (main, args) -> args.isEmpty() ? null : main));
+			appCds.getJvmArgs().convention(project.provider(application::getApplicationDefaultJvmArgs));
+			appCds.getJavaLauncher().convention(toolchains.launcherFor(java.getToolchain()));
+			appCds.getReportTimings().convention(true);
+			appCds.getArchiveFile().convention(project.getLayout().getBuildDirectory().file("appcds/" + taskName + "/" + project.getName() + ".jsa"));
+		});
+	}
+
+	private static final String APP_HOME = "__APP_HOME__";
+
+	/**
+	 * Installs a task creating an archive for an installed distribution of the application, used by its start scripts
+	 * and by the given run task (which then runs the installed jars) once a training run is configured.
+	 */
+	public static TaskProvider<AppCdsTask> installForDistribution(Project project, String taskName, String runTaskName,
+	                                                              String startScriptsTaskName, String installTaskName) {
+		TaskProvider<Sync> install = project.getTasks().named(installTaskName, Sync.class);
+		TaskProvider<CreateStartScripts> startScripts = project.getTasks().named(startScriptsTaskName, CreateStartScripts.class);
+		FileCollection installedJars = project.files((Callable<List<File>>) () -> {
+			// as in the start scripts, which resolve APP_HOME to its canonical path
+			File lib = new File(install.get().getDestinationDir(), "lib").getCanonicalFile();
+			return startScripts.get().getClasspath().getFiles().stream()
+			                   .map(jar -> new File(lib, jar.getName()))
+			                   .collect(Collectors.toList());
+		}).builtBy(install);
+
+		TaskProvider<AppCdsTask> appCds = install(project, taskName, installedJars);
+		appCds.configure(task -> {
+			task.getArchiveFile().set(project.getLayout().file(project.provider(() -> {
+				return new File(install.get().getDestinationDir(), "lib/" + project.getName() + ".jsa");
+			})));
+		});
+		install.configure(task -> task.finalizedBy(appCds));
+
+		project.getTasks().named(runTaskName, JavaExec.class).configure(run -> {
+			GradleUtil.whenEvaluated(project, () -> {
+				if (!appCds.get().hasTrainingRun()) return;
+				run.setClasspath(installedJars);
+				run.getJvmArgumentProviders().add(new SharedArchiveArgs(appCds.flatMap(AppCdsTask::getArchiveFile)));
+			});
+		});
+
+		// (after evaluation, so that the build script can still configure the training run)
+		project.afterEvaluate(_project -> {
+			startScripts.configure(task -> {
+				if (!appCds.get().hasTrainingRun()) return;
+				List<String> jvmArgs = StreamSupport.stream(task.getDefaultJvmOpts().spliterator(), false)
+				                                    .collect(Collectors.toList());
+				jvmArgs.add("-Xshare:auto");
+				jvmArgs.add("-XX:SharedArchiveFile=" + APP_HOME + "/lib/" + project.getName() + ".jsa");
+				task.setDefaultJvmOpts(jvmArgs);
+				task.doLast(new ResolveAppHome());
+			});
+		});
+		return appCds;
+	}
+
+	@TaskAction public void createArchive() {
+		File archive = getArchiveFile().get().getAsFile();
+		archive.delete();
+		archive.getParentFile().mkdirs();
+
+		long withoutArchive = getReportTimings().get() ? run("-Xshare:auto") : 0;
+
+		run("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+		if (!archive.isFile()) {
+			throw new Error("The training run didn't produce " + archive.getPath());
+		}
+
+		if (getReportTimings().get()) {
+			long withArchive = run("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+			// the whole run, including the work of the application: not a startup time
+			String workload = getMainClass().get() + (getArgs().get().isEmpty() ? "" : " " + String.join(" ", getArgs().get()));
+			getLogger().lifecycle(String.format("Training run duration (%s): %d ms without the AppCDS archive, %d ms with it",
+			                                    workload, withoutArchive, withArchive));
+		}
+	}
+
+	private long run(String cdsOption) {
+		List<String> commandLine = new ArrayList<>();
+		commandLine.add(getJavaLauncher().get().getExecutablePath().getAsFile().getAbsolutePath());
+		commandLine.add(cdsOption);
+		commandLine.addAll(getJvmArgs().get());
+		commandLine.add("-cp");
+		commandLine.add(getClasspath().getFiles().stream().map(File::getAbsolutePath).collect(Collectors.joining(File.pathSeparator)));
+		commandLine.add(getMainClass().get());
+		commandLine.addAll(getArgs().get());
+
+		long start = System.nanoTime();
+		getExecOperations().exec(exec -> exec.commandLine(commandLine));
+		return (System.nanoTime() - start) / 1_000_000;
+	}
+
+	private static class SharedArchiveArgs implements CommandLineArgumentProvider {
+
+		private final Provider<RegularFile> archive;
+
+		SharedArchiveArgs(Provider<RegularFile> archive) {
+			this.archive = archive;
+		}
+
+		@InputFile @PathSensitive(PathSensitivity.NONE) public Provider<RegularFile> getArchive() {
+			return archive;
+		}
+
+		@Override
+		public Iterable<String> asArguments() {
+			return List.of("-Xshare:auto", "-XX:SharedArchiveFile=" + archive.get().getAsFile().getAbsolutePath());
+		}
+
+	}
+
+	// start scripts quote jvm options, so the actual APP_HOME must be put in after they are generated
+	private static class ResolveAppHome implements Action<Task> {
+
+		@Override
+		public void execute(Task task) {
+			CreateStartScripts startScripts = (CreateStartScripts) task;
+			replace(startScripts.getUnixScript(), "'\"$APP_HOME\"'");
+			replace(startScripts.getWindowsScript(), "%APP_HOME%");
+		}
+
+		private static void replace(File script, String appHome) {
+			try {
+				String text = Files.readString(script.toPath());
+				Files.writeString(script.toPath(), text.replace(APP_HOME, appHome));
+			} catch (IOException e) {
+				throw new Error("Couldn't update " + script.getPath(), e);
+			}
+		}
+
+	}
+
+	private static class HasTrainingRun implements Spec<Task> {
+
+		@Override
+		public boolean isSatisfiedBy(Task task) {
+			boolean trainingRun = ((AppCdsTask) task).hasTrainingRun();
+			if (!trainingRun) task.getLogger().info("No training run configured (set the args or mainClass of " + task.getPath() + ")");
+			return trainingRun;
+		}
+
+	}
+
+}
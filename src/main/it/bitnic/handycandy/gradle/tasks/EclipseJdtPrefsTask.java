@@ -0,0 +1,122 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.tasks.Delete;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.plugins.ide.eclipse.GenerateEclipseJdt;
+
+/**
+ * Writes eclipse's .settings/org.eclipse.jdt.core.prefs: the settings generated by eclipseJdt plus our preferences,
+ * sorted and without the timestamp comment, and only if they changed (eclipse rebuilds the project whenever the file
+ * changes).
+ * <p>
+ * eclipseJdt is made to generate its settings in the build directory instead: it rewrites its file on every run.
+ */
+public abstract class EclipseJdtPrefsTask extends DefaultTask {
+
+	public EclipseJdtPrefsTask() {
+		setGroup("IDE");
+		setDescription("Writes the eclipse JDT settings file, if it changed");
+	}
+
+	/** The settings generated by eclipseJdt. */
+	@InputFile @PathSensitive(PathSensitivity.NONE) public abstract RegularFileProperty getGeneratedFile();
+
+	@Input public abstract MapProperty<String,String> getPreferences();
+
+	@OutputFile public abstract RegularFileProperty getPrefsFile();
+
+	public static TaskProvider<EclipseJdtPrefsTask> install(Project project, String taskName) {
+		TaskProvider<GenerateEclipseJdt> jdt = project.getTasks().named("eclipseJdt", GenerateEclipseJdt.class);
+		File prefsFile = project.file(".settings/org.eclipse.jdt.core.prefs");
+		jdt.configure(task -> {
+			task.setOutputFile(project.getLayout().getBuildDirectory().file("eclipse/org.eclipse.jdt.core.prefs").get().getAsFile());
+		});
+
+		TaskProvider<EclipseJdtPrefsTask> task = project.getTasks().register(taskName, EclipseJdtPrefsTask.class, prefs -> {
+			prefs.getGeneratedFile().set(project.getLayout().file(jdt.map(GenerateEclipseJdt::getOutputFile)));
+			prefs.getPrefsFile().set(prefsFile);
+		});
+		jdt.configure(t -> t.finalizedBy(task));
+		project.getTasks().named("eclipse").configure(eclipse -> eclipse.dependsOn(task));
+		project.getTasks().named("cleanEclipseJdt", Delete.class).configure(clean -> clean.delete(prefsFile));
+		return task;
+	}
+
+	@TaskAction public void writePrefs() {
+		File prefsFile = getPrefsFile().get().getAsFile();
+		byte[] oldContent = prefsFile.isFile() ? read(prefsFile) : new byte[0];
+
+		// as eclipseJdt does, keep what's in the file (eg. changed in eclipse) but the settings we generate
+		Properties prefs = load(oldContent);
+		prefs.putAll(load(read(getGeneratedFile().get().getAsFile())));
+		prefs.putAll(getPreferences().get());
+
+		byte[] newContent = render(prefs);
+		if (Arrays.equals(oldContent, newContent)) {
+			setDidWork(false); // don't touch the file, or eclipse would rebuild the project
+			return;
+		}
+		try {
+			Files.createDirectories(prefsFile.getParentFile().toPath());
+			Files.write(prefsFile.toPath(), newContent);
+		} catch (IOException e) {
+			throw new Error("Couldn't write " + prefsFile.getPath(), e);
+		}
+	}
+
+	private static byte[] read(File file) {
+		try {
+			return Files.readAllBytes(file.toPath());
+		} catch (IOException e) {
+			throw new Error("Couldn't read " + file.getPath(), e);
+		}
+	}
+
+	private static Properties load(byte[] content) {
+		Properties properties = new Properties();
+		try {
+			properties.load(new ByteArrayInputStream(content));
+		} catch (IOException e) {
+			throw new Error(e); // can't happen
+		}
+		return properties;
+	}
+
+	// like Properties.store(), but with sorted entries and without the timestamp comment
+	private static byte[] render(Properties properties) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			properties.store(out, null);
+		} catch (IOException e) {
+			throw new Error(e); // can't happen
+		}
+		return new String(out.toByteArray(), StandardCharsets.ISO_8859_1)
+		           .lines()
+		           .filter(line -> !line.startsWith("#"))
+		           .sorted()
+		           .map(line -> line + "\n")
+		           .collect(Collectors.joining())
+		           .getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+}
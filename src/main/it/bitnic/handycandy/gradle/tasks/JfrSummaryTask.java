@@ -0,0 +1,204 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SkipWhenEmpty;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.testing.Test;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summarizes flight recordings: hot methods, allocation sites, GC pauses and lock contention, as text and HTML.
+ * <p>
+ * Recordings are grouped by the directory they are in (one per profiled task, see FlightRecordingExtension).
+ */
+public abstract class JfrSummaryTask extends DefaultTask {
+
+	public JfrSummaryTask() {
+		setGroup("verification");
+		setDescription("Summarizes the flight recordings of the profiled tasks");
+	}
+
+	@InputFiles @SkipWhenEmpty @PathSensitive(PathSensitivity.RELATIVE) public abstract ConfigurableFileCollection getRecordings();
+
+	/** How many entries to list in each section (default: 20). */
+	@Input public abstract Property<Integer> getTop();
+
+	@OutputFile public abstract RegularFileProperty getTextReport();
+
+	@OutputFile public abstract RegularFileProperty getHtmlReport();
+
+	public static TaskProvider<JfrSummaryTask> install(Project project, String taskName, Provider<Directory> recordingsDir) {
+		return project.getTasks().register(taskName, JfrSummaryTask.class, summary -> {
+			summary.getRecordings().from(recordingsDir.map(dir -> dir.getAsFileTree().matching(files -> files.include("*/*.jfr"))));
+			summary.getTop().convention(20);
+			summary.getTextReport().convention(recordingsDir.map(dir -> dir.file("summary.txt")));
+			summary.getHtmlReport().convention(recordingsDir.map(dir -> dir.file("summary.html")));
+			summary.mustRunAfter(project.getTasks().withType(Test.class), project.getTasks().withType(JavaExec.class));
+		});
+	}
+
+	@TaskAction public void summarize() throws IOException {
+		Map<String,List<Section>> byTask = new TreeMap<>();
+		Map<String,List<File>> recordings = new TreeMap<>();
+		getRecordings().getFiles().forEach(file -> recordings.computeIfAbsent(file.getParentFile().getName(), _name -> new ArrayList<>()).add(file));
+		for (Map.Entry<String,List<File>> entry : recordings.entrySet()) {
+			byTask.put(entry.getKey(), sections(entry.getValue()));
+		}
+
+		StringBuilder text = new StringBuilder();
+		StringBuilder html = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Flight recordings</title>"
+		                                       + "<style>body{font-family:sans-serif} td{padding:0 1em} td.n{text-align:right}</style></head><body>\n");
+		byTask.forEach((task, sections) -> {
+			text.append("=== ").append(task).append(" (").append(recordings.get(task).size()).append(" recordings)\n");
+			html.append("<h1>").append(escape(task)).append("</h1>\n");
+			sections.forEach(section -> section.render(text, html));
+		});
+		html.append("</body></html>\n");
+
+		Files.writeString(getTextReport().get().getAsFile().toPath(), text);
+		Files.writeString(getHtmlReport().get().getAsFile().toPath(), html);
+		getLogger().lifecycle(text.toString());
+		getLogger().lifecycle("See " + getHtmlReport().get().getAsFile().toURI());
+	}
+
+	private List<Section> sections(List<File> recordings) throws IOException {
+		int top = getTop().get();
+		Section hotMethods  = new Section("Hot methods",      "samples", top, false);
+		Section allocations = new Section("Allocation sites", "bytes",   top, false);
+		Section gcPauses    = new Section("GC pauses",        "ms",      top, true);
+		Section locks       = new Section("Lock contention",  "ms",      top, true);
+
+		for (File recording : recordings) {
+			// one event at a time: recordings of long test runs don't fit in memory
+			try (RecordingFile events = new RecordingFile(recording.toPath())) {
+				while (events.hasMoreEvents()) {
+					RecordedEvent event = events.readEvent();
+					switch (event.getEventType().getName()) {
+						case "jdk.ExecutionSample":
+							hotMethods.add(topFrame(event), 1);
+							break;
+						case "jdk.ObjectAllocationSample":
+							allocations.add(event.getClass("objectClass").getName() + " at " + topFrame(event), event.getLong("weight"));
+							break;
+						case "jdk.GarbageCollection":
+							gcPauses.add(event.getString("name") + " (" + event.getString("cause") + ")", micros(event.getDuration("sumOfPauses")));
+							break;
+						case "jdk.JavaMonitorEnter":
+							locks.add("monitor " + event.getClass("monitorClass").getName() + " at " + topFrame(event), micros(event.getDuration()));
+							break;
+						case "jdk.ThreadPark":
+							String parked = event.getClass("parkedClass") == null ? "?" : event.getClass("parkedClass").getName();
+							locks.add("park on " + parked + " at " + topFrame(event), micros(event.getDuration()));
+							break;
+						default:
+							break;
+					}
+				}
+			}
+		}
+		return List.of(hotMethods, allocations, gcPauses, locks);
+	}
+
+	private static String topFrame(RecordedEvent event) {
+		RecordedStackTrace stackTrace = event.getStackTrace();
+		if (stackTrace == null || stackTrace.getFrames().isEmpty()) return "?";
+		RecordedFrame frame = stackTrace.getFrames().get(0);
+		return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+		       + (frame.getLineNumber() > 0 ? ":" + frame.getLineNumber() : "");
+	}
+
+	private static long micros(Duration duration) {
+		return duration.toNanos() / 1000;
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	// -----------------------------------------------------------------------------------------------------------------
+
+	/** A table of keys with their count, total and max (durations are added in microseconds and shown in ms). */
+	private static class Section {
+
+		private final String title;
+		private final String unit;
+		private final int top;
+		private final boolean durations;
+		private final Map<String,long[]> stats = new HashMap<>(); // count, total, max
+
+		Section(String title, String unit, int top, boolean durations) {
+			this.title = title;
+			this.unit = unit;
+			this.top = top;
+			this.durations = durations;
+		}
+
+		void add(String key, long value) {
+			long[] stat = stats.computeIfAbsent(key, _key -> new long[3]);
+			stat[0]++;
+			stat[1] += value;
+			stat[2] = Math.max(stat[2], value);
+		}
+
+		void render(StringBuilder text, StringBuilder html) {
+			long total = stats.values().stream().mapToLong(stat -> stat[1]).sum();
+			List<Map.Entry<String,long[]>> entries = new ArrayList<>(stats.entrySet());
+			entries.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+			Function<Long,String> format = value -> durations ? String.format("%.1f", value / 1000.0) : Long.toString(value);
+
+			List<String> columns = new ArrayList<>(List.of("count", unit, "%"));
+			if (durations) columns.add("max " + unit);
+
+			text.append("--- ").append(title).append(" (total: ").append(format.apply(total)).append(' ').append(unit).append(")\n");
+			html.append("<h2>").append(title).append("</h2>\n<table><tr>");
+			columns.forEach(column -> html.append("<th>").append(escape(column)).append("</th>"));
+			html.append("<th></th></tr>\n");
+			if (entries.isEmpty()) {
+				text.append("\t(no events)\n");
+			}
+			entries.stream().limit(top).forEach(entry -> {
+				long[] stat = entry.getValue();
+				String percent = String.format("%.1f", total == 0 ? 0 : 100.0 * stat[1] / total);
+				List<String> values = new ArrayList<>(List.of(Long.toString(stat[0]), format.apply(stat[1]), percent));
+				if (durations) values.add(format.apply(stat[2]));
+				text.append('\t');
+				values.forEach(value -> text.append(String.format("%12s", value)));
+				text.append("  ").append(entry.getKey()).append('\n');
+				html.append("<tr>");
+				values.forEach(value -> html.append("<td class=\"n\">").append(value).append("</td>"));
+				html.append("<td>").append(escape(entry.getKey())).append("</td></tr>\n");
+			});
+			html.append("</table>\n");
+		}
+
+	}
+
+}
@@ -0,0 +1,194 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.plugins.JavaApplication;
+import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.gradle.jvm.toolchain.JavaToolchainService;
+import org.gradle.process.ExecOperations;
+
+/**
+ * Packages an application jar with a trimmed java runtime: jdeps finds the JDK modules the jar needs and jlink builds
+ * a runtime with just those.
+ * <p>
+ * The output directory contains {@code runtime/} (the jlink image), {@code lib/} (the jar) and {@code bin/} (start
+ * scripts running the jar with the bundled runtime).
+ */
+@CacheableTask
+public abstract class JlinkTask extends DefaultTask {
+
+	public JlinkTask() {
+		setGroup("distribution");
+		setDescription("Packages the application with a minimal java runtime built by jlink");
+	}
+
+	@InputFile @PathSensitive(PathSensitivity.NAME_ONLY) public abstract RegularFileProperty getJar();
+
+	@Input public abstract Property<String> getApplicationName();
+
+	@Input public abstract Property<String> getMainClass();
+
+	@Input public abstract ListProperty<String> getJvmArgs();
+
+	/** Modules to add on top of the ones found by jdeps (eg. for services or reflection jdeps can't see). */
+	@Input public abstract ListProperty<String> getAdditionalModules();
+
+	/** Value of jlink's --compress option (eg. zip-6 or, for older JDKs, 2); none if not set. */
+	@Input @Optional public abstract Property<String> getCompression();
+
+	@Nested public abstract Property<JavaLauncher> getJavaLauncher();
+
+	@Internal public abstract Property<Boolean> getReportStartup();
+
+	@OutputDirectory public abstract DirectoryProperty getOutputDir();
+
+	@Inject protected abstract ExecOperations getExecOperations();
+
+	@Inject protected abstract FileSystemOperations getFileSystemOperations();
+
+	public static TaskProvider<JlinkTask> install(Project project, String taskName, String jarTaskName) {
+		JavaApplication application = project.getExtensions().getByType(JavaApplication.class);
+		JavaPluginExtension java = project.getExtensions().getByType(JavaPluginExtension.class);
+		JavaToolchainService toolchains = project.getExtensions().getByType(JavaToolchainService.class);
+		return project.getTasks().register(taskName, JlinkTask.class, jlink -> {
+			jlink.getJar().set(project.getTasks().named(jarTaskName, AbstractArchiveTask.class).flatMap(AbstractArchiveTask::getArchiveFile));
+			jlink.getApplicationName().convention(project.provider(application::getApplicationName));
+			jlink.getMainClass().convention(application.getMainClass());
+			jlink.getJvmArgs().convention(project.provider(application::getApplicationDefaultJvmArgs));
+			jlink.getJavaLauncher().convention(toolchains.launcherFor(java.getToolchain()));
+			jlink.getReportStartup().convention(true);
+			jlink.getOutputDir().convention(project.getLayout().getBuildDirectory().dir("jlink/" + project.getName()));
+		});
+	}
+
+	@TaskAction public void jlink() throws IOException {
+		Path jdkHome = getJavaLauncher().get().getMetadata().getInstallationPath().getAsFile().toPath();
+		File jar = getJar().get().getAsFile();
+		File outputDir = getOutputDir().get().getAsFile();
+		File runtimeDir = new File(outputDir, "runtime");
+		getFileSystemOperations().delete(spec -> spec.delete(outputDir));
+
+		// find out the required modules
+		ByteArrayOutputStream jdepsOutput = new ByteArrayOutputStream();
+		getExecOperations().exec(exec -> {
+			exec.commandLine( tool(jdkHome, "jdeps"), "--ignore-missing-deps", "--print-module-deps",
+			                  "--multi-release", Integer.toString(getJavaLauncher().get().getMetadata().getLanguageVersion().asInt()),
+			                  jar.getAbsolutePath() );
+			exec.setStandardOutput(jdepsOutput);
+		});
+		List<String> modules = Stream.concat( Stream.of(jdepsOutput.toString().trim().split(",")), getAdditionalModules().get().stream() )
+		                             .map(String::trim)
+		                             .filter(module -> !module.isEmpty())
+		                             .distinct()
+		                             .collect(Collectors.toList());
+		getLogger().info("Modules required by " + jar.getName() + ": " + modules);
+
+		// build the runtime
+		List<String> jlinkArgs = new ArrayList<>(List.of( tool(jdkHome, "jlink"),
+		                                                  "--add-modules", String.join(",", modules.isEmpty() ? List.of("java.base") : modules),
+		                                                  "--strip-debug", "--no-header-files", "--no-man-pages",
+		                                                  "--output", runtimeDir.getAbsolutePath() ));
+		if (getCompression().isPresent()) jlinkArgs.add("--compress=" + getCompression().get());
+		getExecOperations().exec(exec -> exec.commandLine(jlinkArgs));
+
+		// add the application and its start scripts
+		getFileSystemOperations().copy(spec -> spec.from(jar).into(new File(outputDir, "lib")));
+		writeStartScripts(new File(outputDir, "bin"), jar.getName());
+
+		long imageSize = size(runtimeDir.toPath());
+		long jdkSize = size(jdkHome);
+		getLogger().lifecycle(String.format("jlink runtime: %d MB (%s), full JDK: %d MB", imageSize >> 20, String.join(",", modules), jdkSize >> 20));
+		if (getReportStartup().get()) {
+			// just the JVM: the application may well run until it is stopped
+			long withImage = time(new File(runtimeDir, "bin/java").getAbsolutePath());
+			long withJdk = time(getJavaLauncher().get().getExecutablePath().getAsFile().getAbsolutePath());
+			getLogger().lifecycle(String.format("JVM startup without the application (java -version): %d ms with the jlink runtime, %d ms with the full JDK", withImage, withJdk));
+		}
+	}
+
+	private void writeStartScripts(File binDir, String jarName) throws IOException {
+		binDir.mkdirs();
+		String mainClass = getMainClass().get();
+
+		File unixScript = new File(binDir, getApplicationName().get());
+		Files.writeString(unixScript.toPath(), String.join("\n",
+			"#!/bin/sh",
+			"APP_HOME=$(cd \"$(dirname \"$0\")/..\" > /dev/null && pwd -P)",
+			"exec \"$APP_HOME/runtime/bin/java\" " + quote(getJvmArgs().get(), JlinkTask::shellQuote) + " $JAVA_OPTS -cp \"$APP_HOME/lib/" + jarName + "\" " + mainClass + " \"$@\"",
+			""));
+		unixScript.setExecutable(true);
+
+		File windowsScript = new File(binDir, getApplicationName().get() + ".bat");
+		Files.writeString(windowsScript.toPath(), String.join("\r\n",
+			"@echo off",
+			"set APP_HOME=%~dp0..",
+			"\"%APP_HOME%\\runtime\\bin\\java.exe\" " + quote(getJvmArgs().get(), JlinkTask::batchQuote) + " %JAVA_OPTS% -cp \"%APP_HOME%\\lib\\" + jarName + "\" " + mainClass + " %*",
+			""));
+	}
+
+	private static String quote(List<String> args, Function<String,String> quote) {
+		return args.stream().map(quote).collect(Collectors.joining(" "));
+	}
+
+	// single quotes keep everything as is, but single quotes themselves
+	private static String shellQuote(String arg) {
+		return "'" + arg.replace("'", "'\\''") + "'";
+	}
+
+	// in double quotes, only double quotes and percent signs need escaping
+	private static String batchQuote(String arg) {
+		return "\"" + arg.replace("\"", "\"\"").replace("%", "%%") + "\"";
+	}
+
+	private long time(String java) {
+		long start = System.nanoTime();
+		getExecOperations().exec(exec -> {
+			exec.commandLine(java, "-version");
+			exec.setErrorOutput(new ByteArrayOutputStream());
+		});
+		return (System.nanoTime() - start) / 1_000_000;
+	}
+
+	private static String tool(Path jdkHome, String name) {
+		File tool = jdkHome.resolve("bin").resolve(name).toFile();
+		return tool.exists() ? tool.getAbsolutePath() : jdkHome.resolve("bin").resolve(name + ".exe").toString();
+	}
+
+	private static long size(Path dir) throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+		}
+	}
+
+}
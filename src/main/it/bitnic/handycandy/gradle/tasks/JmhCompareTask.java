@@ -0,0 +1,137 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+
+import groovy.json.JsonSlurper;
+import it.bitnic.handycandy.gradle.extensions.BenchmarksExtension;
+
+/**
+ * Compares JMH results (as saved with -rf json) with a baseline, failing on regressions.
+ * <p>
+ * Throughput modes regress when the score goes down, the others (average/sample/single shot time) when it goes up.
+ * Benchmarks missing from the baseline fail the comparison (the baseline must be updated), benchmarks of the baseline
+ * that weren't run are just reported.
+ */
+public abstract class JmhCompareTask extends DefaultTask {
+
+	public JmhCompareTask() {
+		setGroup("verification");
+		setDescription("Runs the JMH benchmarks and compares the results with the baseline");
+	}
+
+	@InputFile @PathSensitive(PathSensitivity.NONE) public abstract RegularFileProperty getResults();
+
+	@Internal public abstract RegularFileProperty getBaseline(); // it may not exist: compared and created by hand
+
+	@Input public abstract Property<Double> getThreshold();
+
+	/** Whether to replace the baseline with the current results (default: false, or the jmhUpdateBaseline property). */
+	@Input public abstract Property<Boolean> getUpdateBaseline();
+
+	public static TaskProvider<JmhCompareTask> install(Project project, String taskName, String jmhTaskName) {
+		BenchmarksExtension benchmarks = project.getExtensions().getByType(BenchmarksExtension.class);
+		return project.getTasks().register(taskName, JmhCompareTask.class, compare -> {
+			compare.dependsOn(jmhTaskName);
+			compare.getResults().convention(benchmarks.getResultsFile());
+			compare.getBaseline().convention(benchmarks.getBaselineFile());
+			compare.getThreshold().convention(benchmarks.getThreshold());
+			compare.getUpdateBaseline().convention(project.getProviders().gradleProperty("jmhUpdateBaseline").map(value -> !"false".equals(value)).orElse(false));
+			compare.getOutputs().upToDateWhen(_task -> false); // the baseline isn't an input
+		});
+	}
+
+	@TaskAction public void compare() throws IOException {
+		File results = getResults().get().getAsFile();
+		File baseline = getBaseline().get().getAsFile();
+		if (getUpdateBaseline().get() || !baseline.isFile()) {
+			baseline.getParentFile().mkdirs();
+			Files.copy(results.toPath(), baseline.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			getLogger().lifecycle("Saved " + results.getName() + " as the baseline (" + baseline.getPath() + ")");
+			return;
+		}
+
+		Map<String,Score> current = read(results);
+		Map<String,Score> previous = read(baseline);
+		double threshold = getThreshold().get();
+		List<String> regressions = new ArrayList<>();
+		List<String> missing = new ArrayList<>();
+		current.forEach((benchmark, score) -> {
+			Score before = previous.get(benchmark);
+			if (before == null) {
+				getLogger().lifecycle(String.format("%-60s %12.3f %s (not in the baseline)", benchmark, score.value, score.unit));
+				missing.add(benchmark);
+				return;
+			}
+			if (before.value == 0) { // no relative change to speak of
+				getLogger().lifecycle(String.format("%-60s %12.3f -> %12.3f %s (not compared: zero baseline)", benchmark, before.value, score.value, score.unit));
+				return;
+			}
+			double change = (score.value - before.value) / before.value;
+			boolean regressed = score.higherIsBetter ? change < -threshold : change > threshold;
+			String line = String.format("%-60s %12.3f -> %12.3f %s (%+.1f%%)", benchmark, before.value, score.value, score.unit, change * 100);
+			getLogger().lifecycle(line + (regressed ? " REGRESSION" : ""));
+			if (regressed) regressions.add(line);
+		});
+		previous.keySet().stream()
+		        .filter(benchmark -> !current.containsKey(benchmark))
+		        .forEach(benchmark -> getLogger().lifecycle(String.format("%-60s (not run)", benchmark)));
+
+		if (!missing.isEmpty()) {
+			throw new GradleException(missing.size() + " benchmark(s) missing from the baseline (" + baseline.getPath() + "), run with "
+			                          + "-PjmhUpdateBaseline to add them:\n\t" + String.join("\n\t", missing));
+		}
+		if (!regressions.isEmpty()) {
+			throw new GradleException(regressions.size() + " benchmark(s) worse than the baseline by more than "
+			                          + Math.round(threshold * 100) + "%:\n\t" + String.join("\n\t", regressions));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String,Score> read(File jmhResults) {
+		Map<String,Score> scores = new TreeMap<>();
+		List<Map<String,Object>> benchmarks = (List<Map<String,Object>>) new JsonSlurper().parse(jmhResults);
+		benchmarks.forEach(benchmark -> {
+			Map<String,Object> params = (Map<String,Object>) benchmark.getOrDefault("params", Map.of());
+			String mode = (String) benchmark.get("mode");
+			String key = benchmark.get("benchmark") + (params.isEmpty() ? "" : new TreeMap<>(params).toString()) + " " + mode;
+			Map<String,Object> metric = (Map<String,Object>) benchmark.get("primaryMetric");
+			scores.put(key, new Score(((Number) metric.get("score")).doubleValue(), (String) metric.get("scoreUnit"), "thrpt".equals(mode)));
+		});
+		return scores;
+	}
+
+	private static class Score {
+
+		final double value;
+		final String unit;
+		final boolean higherIsBetter;
+
+		Score(double value, String unit, boolean higherIsBetter) {
+			this.value = value;
+			this.unit = unit;
+			this.higherIsBetter = higherIsBetter;
+		}
+
+	}
+
+}
@@ -0,0 +1,19 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import org.gradle.api.tasks.JavaExec;
+
+/**
+ * Runs JMH benchmarks.
+ * <p>
+ * JMH forks inherit the JVM arguments of this task, so RootProjectPlugin leaves tasks of this type out of the JVM
+ * settings meant for tests and applications (but --enable-preview): JVM profile, flight recording, assertions.
+ */
+public abstract class JmhTask extends JavaExec {
+
+	public JmhTask() {
+		setGroup("verification");
+		setDescription("Runs the JMH benchmarks");
+		getMainClass().set("org.openjdk.jmh.Main");
+	}
+
+}
@@ -0,0 +1,56 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.jvm.application.tasks.CreateStartScripts;
+
+/**
+ * Prints the JVM arguments each task that starts a JVM ends up with, for auditing: the flags of the JVM profile (see
+ * JvmProfileExtension) as well as the task's own settings (heap sizes, jvm args, argument providers).
+ * <p>
+ * The arguments are looked up when the task runs, so they include the settings made after the tasks got configured.
+ */
+public abstract class JvmFlagsTask extends DefaultTask {
+
+	public JvmFlagsTask() {
+		setGroup("help");
+		setDescription("Prints the JVM arguments of tests, java executions, start scripts and jlink images");
+	}
+
+	@Input public abstract MapProperty<String,List<String>> getFlags();
+
+	public static TaskProvider<JvmFlagsTask> install(Project project, String taskName) {
+		return project.getTasks().register(taskName, JvmFlagsTask.class, jvmFlags -> {
+			jvmFlags.getFlags().set(project.provider(() -> {
+				Map<String,List<String>> flags = new TreeMap<>();
+				project.getTasks().withType(Test.class).forEach(test -> flags.put(test.getName(), test.getAllJvmArgs()));
+				project.getTasks().withType(JavaExec.class).forEach(javaExec -> flags.put(javaExec.getName(), javaExec.getAllJvmArgs()));
+				project.getTasks().withType(CreateStartScripts.class).forEach(startScripts -> {
+					List<String> jvmArgs = new ArrayList<>();
+					startScripts.getDefaultJvmOpts().forEach(jvmArgs::add);
+					flags.put(startScripts.getName(), jvmArgs);
+				});
+				project.getTasks().withType(JlinkTask.class).forEach(jlink -> flags.put(jlink.getName(), jlink.getJvmArgs().get()));
+				return flags;
+			}));
+		});
+	}
+
+	@TaskAction public void print() {
+		getFlags().get().forEach((taskName, flags) -> {
+			getLogger().lifecycle(String.format("%-20s %s", taskName, flags.isEmpty() ? "(none)" : String.join(" ", flags)));
+		});
+	}
+
+}
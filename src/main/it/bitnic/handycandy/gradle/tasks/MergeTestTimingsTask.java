@@ -0,0 +1,97 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SkipWhenEmpty;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.testing.Test;
+
+import it.bitnic.handycandy.gradle.extensions.TestShardingExtension;
+
+/**
+ * Merges the test durations recorded by test tasks into the timings used to assign test classes to shards (see
+ * TestShardingExtension).
+ * <p>
+ * Files are matched by name ({@code <task name>.properties}): the durations of a class in the recorded files replace
+ * the ones in the timings file, other classes are kept. To merge the files of all CI nodes, add them to
+ * {@link #getRecordedTimings()}.
+ */
+public abstract class MergeTestTimingsTask extends DefaultTask {
+
+	public MergeTestTimingsTask() {
+		setGroup("verification");
+		setDescription("Merges the recorded test durations into the timings used for sharding");
+	}
+
+	/** The timings written by test tasks (default: the {@code *.properties} files of the recorded timings dir). */
+	@InputFiles @SkipWhenEmpty @PathSensitive(PathSensitivity.NAME_ONLY) public abstract ConfigurableFileCollection getRecordedTimings();
+
+	@OutputDirectory public abstract DirectoryProperty getTimingsDir();
+
+	public static TaskProvider<MergeTestTimingsTask> install(Project project, String taskName, TestShardingExtension sharding) {
+		return project.getTasks().register(taskName, MergeTestTimingsTask.class, merge -> {
+			merge.getRecordedTimings().from(sharding.getRecordedTimingsDir().map(dir -> dir.getAsFileTree().matching(files -> files.include("*.properties"))));
+			merge.getTimingsDir().convention(sharding.getTimingsDir());
+			merge.mustRunAfter(project.getTasks().withType(Test.class));
+		});
+	}
+
+	@TaskAction public void merge() {
+		Map<String,List<File>> recorded = new TreeMap<>();
+		getRecordedTimings().getFiles().stream()
+		                    .sorted(Comparator.comparing(File::getPath))
+		                    .forEach(file -> recorded.computeIfAbsent(file.getName(), _name -> new ArrayList<>()).add(file));
+
+		File timingsDir = getTimingsDir().get().getAsFile();
+		recorded.forEach((name, files) -> {
+			File timingsFile = new File(timingsDir, name);
+			Properties timings = timingsFile.isFile() ? load(timingsFile) : new Properties();
+			files.forEach(file -> timings.putAll(load(file)));
+
+			try (Writer out = Files.newBufferedWriter(timingsFile.toPath(), StandardCharsets.UTF_8)) {
+				for (Map.Entry<String,String> entry : sorted(timings).entrySet()) {
+					out.write(entry.getKey() + "=" + entry.getValue() + "\n");
+				}
+			} catch (IOException e) {
+				throw new Error("Couldn't write " + timingsFile.getPath(), e);
+			}
+		});
+	}
+
+	private static Properties load(File file) {
+		Properties properties = new Properties();
+		try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			properties.load(in);
+		} catch (IOException e) {
+			throw new Error("Couldn't read " + file.getPath(), e);
+		}
+		return properties;
+	}
+
+	private static Map<String,String> sorted(Properties properties) {
+		Map<String,String> sorted = new TreeMap<>();
+		properties.stringPropertyNames().forEach(key -> sorted.put(key, properties.getProperty(key)));
+		return sorted;
+	}
+
+}
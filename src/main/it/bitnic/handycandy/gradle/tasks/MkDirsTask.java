@@ -1,42 +1,78 @@
 package it.bitnic.handycandy.gradle.tasks;
 
 import java.io.File;
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.gradle.api.DefaultTask;
 import org.gradle.api.Project;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
 
 import it.bitnic.handycandy.gradle.util.GradleUtil;
 
-public class MkDirsTask extends DefaultTask {
+public abstract class MkDirsTask extends DefaultTask {
 
 	public MkDirsTask() {
 		setGroup("IDE");
 		setDescription("Creates missing source directories");
 	}
 
-	public static void install(Project project, String taskName) {
-		MkDirsTask task = project.getTasks().create(taskName, MkDirsTask.class);
+	@Internal public abstract ListProperty<File> getSourceDirectories();
+
+	@Input @Optional public abstract Property<String> getBasePackage();
+
+	@Input public abstract Property<String> getProjectPath();
+
+	// The directories are deliberately not declared as @OutputDirectories: they are source directories, so gradle would
+	// fingerprint every source file after each run and complain that compileJava consumes them without depending on us.
+	// Instead, the task does no work (and is reported as UP-TO-DATE) when all of them already exist.
+	@Internal public Provider<List<File>> getDirectories() {
+		return getSourceDirectories().map(srcDirs -> {
+			String pkgDir = getBasePackage().map(pkg -> GradleUtil.packageDir(pkg, getProjectPath().get()))
+			                                .getOrElse("");
+			return srcDirs.stream()
+			              .map( src -> pkgDir.isEmpty() ? src : new File(src, pkgDir) )
+			              .collect(Collectors.toList());
+		});
+	}
+
+	public static TaskProvider<MkDirsTask> install(Project project, String taskName) {
+		TaskProvider<MkDirsTask> task = project.getTasks().register(taskName, MkDirsTask.class, mkdirs -> {
+			// source directories are only looked up if the task is actually realized (java and resources share them)
+			mkdirs.getSourceDirectories().set(project.provider(() -> GradleUtil.sourceDirs(project).distinct().collect(Collectors.toList())));
+			mkdirs.getBasePackage().set(project.getProviders().gradleProperty("stereotypical.basePackage"));
+			mkdirs.getProjectPath().set(project.getPath());
+		});
 
 		// run before generating eclipse or idea projects
-		project.afterEvaluate(prj -> {
-			Stream.of(
-				"eclipseClasspath", "idea"
-			).forEach(dependentTaskName -> project.getTasks().named(dependentTaskName, t -> t.dependsOn(task)) );
+		Map.of(
+			"eclipse", "eclipseClasspath",
+			"idea",    "idea"
+		).forEach((pluginId, dependentTaskName) -> {
+			project.getPluginManager().withPlugin(pluginId, plugin -> {
+				project.getTasks().named(dependentTaskName).configure(t -> t.dependsOn(task));
+			});
 		});
+
+		return task;
 	}
 
 	@TaskAction public void mkdirs() {
-		Optional<String> pkgDir = Optional.ofNullable(getProject().getRootProject().getProperties().get("stereotypical.basePackage"))
-		                                  .map(Object::toString)
-		                                  .map(pkg -> pkg.replace('.', '/') + getProject().getPath().replace(':', '/'));
-		GradleUtil.sourceDirs(getProject())
-		          .map( src -> pkgDir.map(pkg -> new File(src, pkg)).orElse(src) )
-		          .forEach(dir -> {
-		              if (dir.mkdirs()) getProject().getLogger().lifecycle("\tmkdir " + dir.getAbsolutePath());
-		          });
+		List<File> missing = getDirectories().get().stream()
+		                                     .filter(dir -> !dir.isDirectory())
+		                                     .collect(Collectors.toList());
+		missing.forEach(dir -> {
+			if (dir.mkdirs()) getLogger().lifecycle("\tmkdir " + dir.getAbsolutePath());
+		});
+		setDidWork(!missing.isEmpty());
 	}
 
 }
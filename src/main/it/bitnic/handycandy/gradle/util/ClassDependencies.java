@@ -0,0 +1,101 @@
+package it.bitnic.handycandy.gradle.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the classes referenced by a class file by looking at its constant pool (class entries and type descriptors
+ * and signatures).
+ * <p>
+ * This is an under-approximation of its actual dependencies: javac inlines the compile-time constants (static final
+ * primitive and String fields with a constant initializer) of other classes, leaving no trace of them in the constant
+ * pool. Hence {@link #constants}, which tells whether the class declares such constants, ie. whether some of its
+ * dependents may be missing.
+ */
+public class ClassDependencies {
+
+	/** The binary name of the class (eg. {@code com.example.Outer$Inner}). */
+	public final String name;
+
+	/** The binary names of the classes it references. */
+	public final Set<String> dependencies;
+
+	/** Whether the class declares compile-time constants (fields with a ConstantValue attribute). */
+	public final boolean constants;
+
+	private ClassDependencies(String name, Set<String> dependencies, boolean constants) {
+		this.name = name;
+		this.dependencies = dependencies;
+		this.constants = constants;
+	}
+
+	private static final Pattern DESCRIPTOR_TYPE = Pattern.compile("L([^;<>()\\[\\s.]+)[;<]");
+
+	public static ClassDependencies of(byte[] classFile) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+		if (in.readInt() != 0xCAFEBABE) throw new IOException("Not a class file");
+		in.readUnsignedShort(); // minor version
+		in.readUnsignedShort(); // major version
+
+		int count = in.readUnsignedShort();
+		String[] utf8 = new String[count];
+		int[] classNameIndex = new int[count];
+		for (int i = 1; i < count; i++) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+				case 1:  utf8[i] = in.readUTF(); break;                     // Utf8
+				case 7:  classNameIndex[i] = in.readUnsignedShort(); break; // Class
+				case 8: case 16: case 19: case 20: in.skipBytes(2); break;  // String, MethodType, Module, Package
+				case 15: in.skipBytes(3); break;                            // MethodHandle
+				case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18: in.skipBytes(4); break;
+				case 5: case 6: in.skipBytes(8); i++; break;                // Long and Double take two slots
+				default: throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+		in.readUnsignedShort(); // access flags
+		int thisClass = in.readUnsignedShort();
+		in.readUnsignedShort(); // super class
+		in.skipBytes(2 * in.readUnsignedShort()); // interfaces
+
+		boolean constants = false;
+		int fields = in.readUnsignedShort();
+		for (int i = 0; i < fields; i++) {
+			in.skipBytes(6); // access flags, name and descriptor
+			int attributes = in.readUnsignedShort();
+			for (int j = 0; j < attributes; j++) {
+				if ("ConstantValue".equals(utf8[in.readUnsignedShort()])) constants = true;
+				in.skipBytes(in.readInt());
+			}
+		}
+
+		Set<String> dependencies = new TreeSet<>();
+		for (int i = 1; i < count; i++) {
+			if (classNameIndex[i] != 0) {
+				String name = utf8[classNameIndex[i]];
+				if (name.startsWith("[")) {
+					addDescriptorTypes(name, dependencies);
+				} else {
+					dependencies.add(name.replace('/', '.'));
+				}
+			} else if (utf8[i] != null) {
+				addDescriptorTypes(utf8[i], dependencies);
+			}
+		}
+		String className = utf8[classNameIndex[thisClass]].replace('/', '.');
+		dependencies.remove(className);
+		return new ClassDependencies(className, dependencies, constants);
+	}
+
+	private static void addDescriptorTypes(String descriptor, Set<String> dependencies) {
+		Matcher matcher = DESCRIPTOR_TYPE.matcher(descriptor);
+		while (matcher.find()) {
+			dependencies.add(matcher.group(1).replace('/', '.'));
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package it.bitnic.handycandy.gradle.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent index of the classes in a directory: checksum and dependencies of each class (see ClassDependencies).
+ * <p>
+ * Updating the index only reads the class files whose size or timestamp changed since the last update.
+ */
+public class ClassIndex {
+
+	public static class ClassInfo {
+
+		public final String name;
+		public final long checksum;
+		public final Set<String> dependencies;
+		/** Whether the class declares compile-time constants, which its dependents may have inlined. */
+		public final boolean constants;
+
+		private final long size;
+		private final long timestamp;
+
+		ClassInfo(String name, long checksum, Set<String> dependencies, boolean constants, long size, long timestamp) {
+			this.name = name;
+			this.checksum = checksum;
+			this.dependencies = dependencies;
+			this.constants = constants;
+			this.size = size;
+			this.timestamp = timestamp;
+		}
+
+	}
+
+	private ClassIndex() {
+		// utility class
+	}
+
+	/** Brings the index of {@code classesDir} (kept in {@code indexDir}) up to date and returns it, by class name. */
+	public static Map<String,ClassInfo> update(File classesDir, File indexDir) {
+		File indexFile = new File(indexDir, Integer.toHexString(classesDir.getAbsolutePath().hashCode()) + ".index");
+
+		// by relative path
+		Map<String,ClassInfo> old = new HashMap<>();
+		if (indexFile.isFile()) {
+			try (BufferedReader in = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+				in.lines().map(line -> line.split("\t", -1)).filter(fields -> fields.length == 7).forEach(fields -> {
+					Set<String> deps = fields[6].isEmpty() ? Collections.emptySet()
+					                                       : new LinkedHashSet<>(Arrays.asList(fields[6].split(" ")));
+					old.put(fields[0], new ClassInfo( fields[3], Long.parseLong(fields[4]), deps, Boolean.parseBoolean(fields[5]),
+					                                  Long.parseLong(fields[1]), Long.parseLong(fields[2]) ));
+				});
+			} catch (IOException | RuntimeException e) {
+				old.clear(); // rebuild from scratch
+			}
+		}
+
+		Map<String,ClassInfo> current = new TreeMap<>();
+		if (classesDir.isDirectory()) {
+			Path root = classesDir.toPath();
+			try (Stream<Path> files = Files.walk(root)) {
+				for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".class"))::iterator) {
+					String relPath = root.relativize(file).toString().replace(File.separatorChar, '/');
+					long size = Files.size(file);
+					long timestamp = Files.getLastModifiedTime(file).toMillis();
+					ClassInfo previous = old.get(relPath);
+					if (previous != null && previous.size == size && previous.timestamp == timestamp) {
+						current.put(relPath, previous);
+					} else {
+						byte[] bytes = Files.readAllBytes(file);
+						CRC32 crc = new CRC32();
+						crc.update(bytes);
+						ClassDependencies deps = ClassDependencies.of(bytes);
+						current.put(relPath, new ClassInfo(deps.name, crc.getValue(), deps.dependencies, deps.constants, size, timestamp));
+					}
+				}
+			} catch (IOException e) {
+				throw new Error("Couldn't index " + classesDir.getPath(), e);
+			}
+		}
+
+		if (!current.keySet().equals(old.keySet()) || current.entrySet().stream().anyMatch(e -> e.getValue() != old.get(e.getKey()))) {
+			try {
+				Files.createDirectories(indexDir.toPath());
+				try (Writer out = Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8)) {
+					for (Map.Entry<String,ClassInfo> entry : current.entrySet()) {
+						ClassInfo info = entry.getValue();
+						out.write(entry.getKey() + "\t" + info.size + "\t" + info.timestamp + "\t"
+						        + info.name + "\t" + info.checksum + "\t" + info.constants + "\t" + String.join(" ", info.dependencies) + "\n");
+					}
+				}
+			} catch (IOException e) {
+				throw new Error("Couldn't write " + indexFile.getPath(), e);
+			}
+		}
+
+		return current.values().stream()
+		              .collect(Collectors.toMap(info -> info.name, info -> info, (a, b) -> a, TreeMap::new));
+	}
+
+}
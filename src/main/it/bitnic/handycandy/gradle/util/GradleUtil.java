@@ -1,11 +1,14 @@
 package it.bitnic.handycandy.gradle.util;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import org.gradle.api.Project;
 import org.gradle.api.file.SourceDirectorySet;
+import org.gradle.api.plugins.ExtraPropertiesExtension;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 
@@ -15,6 +18,40 @@ public class GradleUtil {
 		// utility class
 	}
 
+	private static final String PENDING_ACTIONS = GradleUtil.class.getName() + ".pendingActions";
+
+	/**
+	 * Prepares the project for {@link #whenEvaluated(Project, Runnable)}: gradle doesn't allow afterEvaluate() in lazy
+	 * configuration actions (where whenEvaluated() is mostly used), so this registers the one afterEvaluate() running
+	 * them all. To be called when applying a plugin.
+	 */
+	public static void trackEvaluation(Project project) {
+		ExtraPropertiesExtension extra = project.getExtensions().getExtraProperties();
+		if (extra.has(PENDING_ACTIONS) || project.getState().getExecuted()) return;
+		List<Runnable> pending = new ArrayList<>();
+		extra.set(PENDING_ACTIONS, pending);
+		project.afterEvaluate(_project -> {
+			extra.set(PENDING_ACTIONS, null); // actions (eg. realizing tasks) registering more actions run them right away
+			pending.forEach(Runnable::run);
+		});
+	}
+
+	/**
+	 * Runs an action once the project has been evaluated (right away if it already has been), ie. once its build script
+	 * had its say on our extensions: configuration actions use this to read extension settings that can't be wired to
+	 * task properties lazily.
+	 */
+	@SuppressWarnings("unchecked")
+	public static void whenEvaluated(Project project, Runnable action) {
+		ExtraPropertiesExtension extra = project.getExtensions().getExtraProperties();
+		List<Runnable> pending = extra.has(PENDING_ACTIONS) ? (List<Runnable>) extra.get(PENDING_ACTIONS) : null;
+		if (pending == null) {
+			action.run();
+		} else {
+			pending.add(action);
+		}
+	}
+
 	public static Stream<SourceSet> sourceSets(Project project) {
 		return project.getExtensions().getByType(SourceSetContainer.class).stream();
 	}
@@ -28,4 +65,24 @@ public class GradleUtil {
 		});
 	}
 
+	// -----------------------------------------------------------------------------------------------------------------
+	// Source layout: one directory per source set (src/<name>, for both java sources and resources), package directories
+	// named after the project path and eclipse output directories in build-eclipse/ rather than bin/
+	// -----------------------------------------------------------------------------------------------------------------
+
+	/** The directory of a source set. */
+	public static File sourceDir(Project project, String srcSetName) {
+		return project.file("src/" + srcSetName);
+	}
+
+	/** The package directory of a project: the base package followed by the project path (eg. com/example/sub/project). */
+	public static String packageDir(String basePackage, String projectPath) {
+		return basePackage.replace('.', '/') + projectPath.replace(':', '/');
+	}
+
+	/** Where eclipse should compile a source folder, given where gradle would have it compiled. */
+	public static String eclipseOutput(String output) {
+		return output != null && output.startsWith("bin/") ? output.replaceFirst("^bin/", "build-eclipse/") : output;
+	}
+
 }
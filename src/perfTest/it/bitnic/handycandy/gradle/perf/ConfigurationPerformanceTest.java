@@ -0,0 +1,132 @@
+package it.bitnic.handycandy.gradle.perf;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.gradle.util.GradleVersion;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import it.bitnic.handycandy.gradle.TestBuild;
+
+/**
+ * Measures the configuration of generated builds of 10, 100 and 1000 projects using each of our project plugins (and
+ * plain java projects, as a reference).
+ * <p>
+ * Each build is configured a few times to warm up the TestKit daemon, then a few more times keeping the medians. The
+ * results are saved as JSON and compared with the baseline: configuration time and heap usage may grow by the threshold
+ * (25% by default, plus some noise allowance), the number of realized tasks not at all. With perfUpdateBaseline the
+ * results are saved as the new baseline instead; as times depend on the machine, record it where the benchmarks run.
+ * Scenarios missing from the baseline are skipped.
+ * <p>
+ * The baseline records the number of cores of the machine it was measured on. The committed one comes from a single
+ * core machine, where a percentage of a few hundred milliseconds is within the noise: compare the task counts, and
+ * take the times as a rough guide unless the baseline was recorded on the machine running the benchmarks.
+ * <p>
+ * Run with gradle perfTest (see build.gradle for the properties tuning it).
+ */
+class ConfigurationPerformanceTest {
+
+	private static final long NOISE_MILLIS = 100;
+	private static final long NOISE_MEGABYTES = 16;
+
+	private static final File resultsFile = new File(System.getProperty("perf.results", "build/reports/perf/results.json"));
+	private static final File baselineFile = new File(System.getProperty("perf.baseline", "src/perfTest/perf-baseline.json"));
+	private static final double threshold = Double.parseDouble(System.getProperty("perfThreshold", "0.25"));
+	private static final int warmups = Integer.getInteger("perfWarmups", 3);
+	private static final int iterations = Integer.getInteger("perfIterations", 5);
+	private static final boolean updateBaseline = !"false".equals(System.getProperty("perfUpdateBaseline", "false"));
+
+	private static final Map<String,Object> results = new TreeMap<>();
+
+	static Stream<Arguments> scenarios() {
+		List<Integer> sizes = Arrays.stream(System.getProperty("perfSizes", "10,100,1000").split(","))
+		                            .map(String::trim)
+		                            .map(Integer::valueOf)
+		                            .collect(Collectors.toList());
+		return Stream.of("java", "root-project", "java-library", "java-application")
+		             .flatMap(plugin -> sizes.stream().map(size -> Arguments.of(plugin, size)));
+	}
+
+	@ParameterizedTest(name = "{0} x {1}")
+	@MethodSource("scenarios")
+	void configuration(String plugin, int projects, @TempDir Path dir) {
+		if (plugin.equals("java-application")) TestBuild.assumeApplicationPluginSupported();
+		SyntheticBuild build = new SyntheticBuild(dir, plugin, projects);
+
+		for (int i = 0; i < warmups; i++) build.configure();
+		List<Measurement> measurements = new ArrayList<>();
+		for (int i = 0; i < iterations; i++) measurements.add(build.configure());
+		Measurement measurement = Measurement.median(measurements);
+
+		String scenario = plugin + " x " + projects;
+		results.put(scenario, measurement.toJson());
+		System.out.println(String.format("%-24s %s", scenario, measurement));
+		if (updateBaseline) return;
+
+		Object before = scenarios(baseline()).get(scenario);
+		Assumptions.assumeTrue(before != null, "No baseline for " + scenario + " in " + baselineFile + ": run gradle perfTest -PperfUpdateBaseline");
+		Measurement baseline = Measurement.fromJson(json(before));
+		assertTrue(measurement.realizedTasks <= baseline.realizedTasks,
+		           scenario + " realizes " + measurement.realizedTasks + " tasks instead of " + baseline.realizedTasks);
+		assertNotWorse(scenario, "configuration time (ms)", baseline.configurationMillis, measurement.configurationMillis, NOISE_MILLIS);
+		assertNotWorse(scenario, "heap usage (MB)", baseline.heapMegabytes, measurement.heapMegabytes, NOISE_MEGABYTES);
+	}
+
+	private static void assertNotWorse(String scenario, String what, long before, long now, long noise) {
+		assertTrue(now <= Math.max(before * (1 + threshold), before + noise),
+		           String.format("%s: %s went from %d to %d (%+.1f%%, threshold %.0f%%)",
+		                         scenario, what, before, now, (now - before) * 100.0 / before, threshold * 100));
+	}
+
+	@AfterAll static void saveResults() throws IOException {
+		write(resultsFile, results);
+		if (updateBaseline) {
+			Map<String,Object> scenarios = new TreeMap<>(scenarios(baseline())); // keep the scenarios we didn't run
+			scenarios.putAll(results);
+			write(baselineFile, scenarios);
+		}
+	}
+
+	private static void write(File file, Map<String,Object> scenarios) throws IOException {
+		Map<String,Object> json = new LinkedHashMap<>();
+		json.put("gradle", GradleVersion.current().getVersion());
+		json.put("java", System.getProperty("java.version"));
+		json.put("cores", Runtime.getRuntime().availableProcessors());
+		json.put("scenarios", scenarios);
+		Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+		Files.writeString(file.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(json)) + "\n");
+	}
+
+	private static Map<String,Object> baseline() {
+		return baselineFile.isFile() ? json(new JsonSlurper().parse(baselineFile)) : Map.of();
+	}
+
+	private static Map<String,Object> scenarios(Map<String,Object> json) {
+		return json(json.getOrDefault("scenarios", Map.of()));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String,Object> json(Object object) {
+		return (Map<String,Object>) object;
+	}
+
+}
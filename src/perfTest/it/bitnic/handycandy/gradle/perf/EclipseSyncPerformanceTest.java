@@ -0,0 +1,93 @@
+package it.bitnic.handycandy.gradle.perf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.gradle.util.GradleVersion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import groovy.json.JsonOutput;
+
+/**
+ * Measures the eclipse sync (gradle eclipse) of a generated build of 200 java-library projects whose eclipse metadata
+ * is up to date, against regenerating it from scratch (gradle cleanEclipse eclipse, which is what every sync did when
+ * eclipse depended on cleanEclipse).
+ * <p>
+ * Both are measured on the same machine in the same run, so there's no baseline: the up to date sync must not be slower
+ * than the threshold allows, and must leave the timestamps of all the eclipse files alone (so that eclipse doesn't
+ * rebuild any project). The results are saved as eclipse-sync.json next to the results of ConfigurationPerformanceTest.
+ * <p>
+ * Run with gradle perfTest (-PperfEclipseProjects=&lt;count&gt; to change the size of the build).
+ */
+class EclipseSyncPerformanceTest {
+
+	private static final File resultsFile = new File(new File(System.getProperty("perf.results", "build/reports/perf/results.json")).getParentFile(), "eclipse-sync.json");
+	private static final double threshold = Double.parseDouble(System.getProperty("perfThreshold", "0.25"));
+	private static final int warmups = Integer.getInteger("perfWarmups", 3);
+	private static final int iterations = Integer.getInteger("perfIterations", 5);
+	private static final int projects = Integer.getInteger("perfEclipseProjects", 200);
+
+	@Test void upToDateSync(@TempDir Path dir) throws IOException {
+		SyntheticBuild build = new SyntheticBuild(dir, "java-library", projects);
+
+		for (int i = 0; i < warmups; i++) build.run("cleanEclipse", "eclipse");
+		long regenerated = median(build, "cleanEclipse", "eclipse");
+		long upToDate = median(build, "eclipse");
+
+		Map<Path,Long> timestamps = timestamps(dir);
+		build.run("eclipse");
+		assertEquals(timestamps, timestamps(dir), "eclipse files rewritten by an up to date sync");
+
+		System.out.println(String.format("eclipse sync x %d: %6d ms from scratch, %6d ms up to date", projects, regenerated, upToDate));
+		Map<String,Object> json = new LinkedHashMap<>();
+		json.put("gradle", GradleVersion.current().getVersion());
+		json.put("java", System.getProperty("java.version"));
+		json.put("projects", projects);
+		json.put("regeneratedMillis", regenerated);
+		json.put("upToDateMillis", upToDate);
+		Files.createDirectories(resultsFile.getAbsoluteFile().getParentFile().toPath());
+		Files.writeString(resultsFile.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(json)) + "\n");
+
+		assertTrue(upToDate <= regenerated * (1 + threshold),
+		           String.format("an up to date eclipse sync took %d ms, regenerating everything %d ms", upToDate, regenerated));
+	}
+
+	private static long median(SyntheticBuild build, String... tasks) {
+		List<Long> millis = new ArrayList<>();
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			build.run(tasks);
+			millis.add((System.nanoTime() - start) / 1_000_000);
+		}
+		return millis.stream().sorted().collect(Collectors.toList()).get(millis.size() / 2);
+	}
+
+	// the eclipse files of all the projects
+	private static Map<Path,Long> timestamps(Path dir) throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			Map<Path,Long> timestamps = new LinkedHashMap<>();
+			for (Path file : files.filter(EclipseSyncPerformanceTest::isEclipseFile).sorted().collect(Collectors.toList())) {
+				timestamps.put(file, Files.getLastModifiedTime(file).toMillis());
+			}
+			return timestamps;
+		}
+	}
+
+	private static boolean isEclipseFile(Path file) {
+		String name = file.getFileName().toString();
+		return name.equals(".project") || name.equals(".classpath") || name.equals("org.eclipse.jdt.core.prefs") && file.getParent().getFileName().toString().equals(".settings");
+	}
+
+}
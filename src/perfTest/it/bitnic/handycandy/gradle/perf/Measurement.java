@@ -0,0 +1,51 @@
+package it.bitnic.handycandy.gradle.perf;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/** What a configuration of a synthetic build cost. */
+class Measurement {
+
+	final long configurationMillis;
+	final int realizedTasks;
+	final long heapMegabytes;
+
+	Measurement(long configurationMillis, int realizedTasks, long heapMegabytes) {
+		this.configurationMillis = configurationMillis;
+		this.realizedTasks = realizedTasks;
+		this.heapMegabytes = heapMegabytes;
+	}
+
+	/** The medians of the times and heap usages, and the most realized tasks (which should always be the same). */
+	static Measurement median(List<Measurement> measurements) {
+		return new Measurement(median(measurements, m -> m.configurationMillis),
+		                       measurements.stream().mapToInt(m -> m.realizedTasks).max().orElse(0),
+		                       median(measurements, m -> m.heapMegabytes));
+	}
+
+	private static long median(List<Measurement> measurements, ToLongFunction<Measurement> value) {
+		long[] values = measurements.stream().mapToLong(value).sorted().toArray();
+		return values[values.length / 2];
+	}
+
+	Map<String,Object> toJson() {
+		Map<String,Object> json = new LinkedHashMap<>();
+		json.put("configurationMillis", configurationMillis);
+		json.put("realizedTasks", realizedTasks);
+		json.put("heapMegabytes", heapMegabytes);
+		return json;
+	}
+
+	static Measurement fromJson(Map<String,Object> json) {
+		return new Measurement(((Number) json.get("configurationMillis")).longValue(),
+		                       ((Number) json.get("realizedTasks")).intValue(),
+		                       ((Number) json.get("heapMegabytes")).longValue());
+	}
+
+	@Override public String toString() {
+		return String.format("%6d ms, %5d tasks realized, %5d MB heap", configurationMillis, realizedTasks, heapMegabytes);
+	}
+
+}
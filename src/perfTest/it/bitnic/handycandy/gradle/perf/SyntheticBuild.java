@@ -0,0 +1,90 @@
+package it.bitnic.handycandy.gradle.perf;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+/**
+ * A generated build of some projects all applying one of our plugins, instrumented (in its settings.gradle) to report
+ * how long the configuration took, how many tasks got realized and how much heap the configured build holds (the
+ * daemon's heap usage after a GC, minus what it was before the configuration: the daemon caches stuff across builds).
+ * <p>
+ * Project pN depends on project p(N/2), so that the projects form a tree of dependencies like in a real monorepo. The
+ * "java" plugin stands for plain java projects without any of our plugins, to compare with.
+ * <p>
+ * Our plugins are put on the classpath of settings.gradle, like buildSrc would, rather than injected by TestKit: the
+ * injection makes the configuration of big builds several times slower, which would hide our own costs.
+ */
+class SyntheticBuild {
+
+	private static final Pattern REPORT = Pattern.compile("PERF configurationMillis=(\\d+) realizedTasks=(\\d+) heapBytes=(-?\\d+)");
+
+	private final Path dir;
+
+	SyntheticBuild(Path dir, String plugin, int projects) {
+		this.dir = dir;
+		String classpath = TestBuild.pluginClasspath().stream()
+		                            .map(file -> "'" + file.getPath().replace("\\", "/") + "'")
+		                            .collect(Collectors.joining(", "));
+		TestBuild build = new TestBuild(dir);
+		build.file("gradle.properties", "org.gradle.jvmargs=-Xmx2g\n");
+		build.file("settings.gradle", (plugin.equals("java") ? "" : "buildscript { dependencies { classpath files(" + classpath + ") } }\n"
+		                                                            + "apply plugin: 'it.bitnic.gradle.settings'\n")
+		                              + "rootProject.name = 'synthetic'\n"
+		                              + "include((1.." + projects + ").collect { 'p' + it } as String[])\n"
+		                              + "\n"
+		                              + "def heapUsed = { System.gc(); java.lang.management.ManagementFactory.memoryMXBean.heapMemoryUsage.used }\n"
+		                              + "def heapBefore = heapUsed()\n"
+		                              + "def configurationStart = System.nanoTime()\n"
+		                              + "def realizedTasks = new java.util.concurrent.atomic.AtomicInteger()\n"
+		                              + "gradle.beforeProject { project -> project.tasks.configureEach { realizedTasks.incrementAndGet() } }\n"
+		                              + "gradle.taskGraph.whenReady {\n"
+		                              + "\tlong millis = (System.nanoTime() - configurationStart).intdiv(1000000)\n"
+		                              + "\tprintln \"PERF configurationMillis=$millis realizedTasks=${realizedTasks.get()} heapBytes=${heapUsed() - heapBefore}\"\n"
+		                              + "}\n");
+		boolean javaPlugins = plugin.startsWith("java-");
+		build.file("build.gradle", javaPlugins ? build.javaPlugins() : "");
+
+		for (int i = 1; i <= projects; i++) {
+			StringBuilder script = new StringBuilder();
+			script.append("plugins { id '").append(javaPlugins ? "it.bitnic.gradle." + plugin : "java").append("' }\n");
+			if (i > 1) script.append("dependencies { implementation project(':p").append(i / 2).append("') }\n");
+			if (plugin.equals("java-application")) script.append("application { mainClass = 'p").append(i).append(".Main' }\n");
+			build.file("p" + i + "/build.gradle", script.toString());
+		}
+	}
+
+	Path dir() {
+		return dir;
+	}
+
+	/** Configures the build (running no task but help), returning what it measured. */
+	Measurement configure() {
+		BuildResult result = run("help");
+		Matcher report = REPORT.matcher(result.getOutput());
+		if (!report.find()) throw new AssertionError("No measurements in the output:\n" + result.getOutput());
+		return new Measurement(Long.parseLong(report.group(1)),
+		                       Integer.parseInt(report.group(2)),
+		                       Math.max(0, Long.parseLong(report.group(3))) / (1024 * 1024));
+	}
+
+	/** Runs the build with the given tasks. */
+	BuildResult run(String... tasks) {
+		List<String> arguments = new ArrayList<>(Arrays.asList(tasks));
+		arguments.add("--no-configuration-cache");
+		return GradleRunner.create()
+		                   .withProjectDir(dir.toFile())
+		                   .withArguments(arguments)
+		                   .build();
+	}
+
+}
@@ -0,0 +1,128 @@
+package it.bitnic.handycandy.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.util.GradleVersion;
+import org.junit.jupiter.api.Assumptions;
+
+/**
+ * A throwaway build using our plugins, run with gradle TestKit.
+ * <p>
+ * Builds don't need any repository: {@link #junitDependencies()} gives them JUnit from the jars of the test JVM. The
+ * exception are builds using the java-library/java-application plugins, which need some of the plugins they apply from
+ * the plugin portal (see {@link #javaPlugins(String...)}).
+ */
+public class TestBuild {
+
+	/**
+	 * Skips the calling test where the java-application plugin can't work: it applies shadow 8.1.1 (the version we build
+	 * against), which doesn't support gradle 9.
+	 */
+	public static void assumeApplicationPluginSupported() {
+		Assumptions.assumeTrue(GradleVersion.current().compareTo(GradleVersion.version("9.0")) < 0,
+		                       "shadow 8.1.1 doesn't support gradle " + GradleVersion.current().getVersion());
+	}
+
+	private final Path dir;
+
+	public TestBuild(Path dir) {
+		this.dir = dir;
+		file("settings.gradle", "rootProject.name = 'sample'\n");
+	}
+
+	public Path dir() {
+		return dir;
+	}
+
+	public File file(String path) {
+		return dir.resolve(path).toFile();
+	}
+
+	/** Writes a file of the build (replacing it if it exists). */
+	public TestBuild file(String path, String content) {
+		try {
+			Path file = dir.resolve(path);
+			Files.createDirectories(file.getParent());
+			Files.writeString(file, content);
+		} catch (IOException e) {
+			throw new Error("Couldn't write " + path, e);
+		}
+		return this;
+	}
+
+	/**
+	 * The beginning of a root build script providing the plugins applied by BaseJavaPlugin, and applying the given ones.
+	 * <p>
+	 * net.ltgt.apt 0.21 doesn't support gradle 9, and only adds the IDE settings of annotation processors (which no test
+	 * looks at): the build gets the gradle eclipse and idea plugins under its ids instead, from a directory of plugin
+	 * descriptors put on the classpath of the root project (and so of its subprojects).
+	 */
+	public String javaPlugins(String... pluginIds) {
+		file("test-plugins/META-INF/gradle-plugins/net.ltgt.apt-eclipse.properties", "implementation-class=org.gradle.plugins.ide.eclipse.EclipsePlugin\n");
+		file("test-plugins/META-INF/gradle-plugins/net.ltgt.apt-idea.properties", "implementation-class=org.gradle.plugins.ide.idea.IdeaPlugin\n");
+		return "buildscript { dependencies { classpath files('test-plugins') } }\n"
+		       + "plugins {\n"
+		       + "\tid 'com.gorylenko.gradle-git-properties' version '2.5.3' apply false\n"
+		       + Arrays.stream(pluginIds).map(id -> "\tid '" + id + "'\n").collect(Collectors.joining())
+		       + "}\n";
+	}
+
+	public String read(String path) {
+		try {
+			return Files.readString(dir.resolve(path));
+		} catch (IOException e) {
+			throw new Error("Couldn't read " + path, e);
+		}
+	}
+
+	public BuildResult run(String... args) {
+		return runner(args).build();
+	}
+
+	public BuildResult fail(String... args) {
+		return runner(args).buildAndFail();
+	}
+
+	private GradleRunner runner(String... args) {
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		arguments.add("--stacktrace");
+		return GradleRunner.create()
+		                   .withProjectDir(dir.toFile())
+		                   .withPluginClasspath()
+		                   .withArguments(arguments);
+	}
+
+	/** The classpath of our plugins, which TestKit injects in the builds run with {@link #run(String...)}. */
+	public static List<File> pluginClasspath() {
+		Properties metadata = new Properties();
+		try (InputStream in = TestBuild.class.getClassLoader().getResourceAsStream("plugin-under-test-metadata.properties")) {
+			metadata.load(in);
+		} catch (IOException e) {
+			throw new Error("Couldn't read plugin-under-test-metadata.properties", e);
+		}
+		return Arrays.stream(metadata.getProperty("implementation-classpath").split(File.pathSeparator))
+		             .map(File::new)
+		             .collect(Collectors.toList());
+	}
+
+	/** A dependencies block with JUnit 5 for the test source set (the jars this very test runs with). */
+	public static String junitDependencies() {
+		String jars = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+		                    .filter(entry -> new File(entry).getName().matches("(junit-|opentest4j|apiguardian).*\\.jar"))
+		                    .map(entry -> "'" + entry.replace("\\", "/") + "'")
+		                    .collect(Collectors.joining(", "));
+		return "dependencies {\n\ttestImplementation files(" + jars + ")\n}\n";
+	}
+
+}
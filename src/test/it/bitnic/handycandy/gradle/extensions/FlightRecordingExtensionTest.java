@@ -0,0 +1,55 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class FlightRecordingExtensionTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "sourceSets.test.java.srcDirs = ['src/test']\n"
+		                           + TestBuild.junitDependencies());
+		build.file("src/test/sample/SampleTest.java", "package sample;\n"
+		                                              + "class SampleTest {\n"
+		                                              + "\t@org.junit.jupiter.api.Test void busy() {\n"
+		                                              + "\t\tStringBuilder text = new StringBuilder();\n"
+		                                              + "\t\tfor (int i = 0; i < 200_000; i++) text.append(i % 10);\n"
+		                                              + "\t}\n"
+		                                              + "}\n");
+	}
+
+	@Test void summarizesTheRecordingsOfProfiledTasks() {
+		BuildResult result = build.run("test", "-Pprofile");
+
+		assertEquals(TaskOutcome.SUCCESS, result.task(":jfrSummary").getOutcome());
+		String summary = build.read("build/reports/jfr/summary.txt");
+		assertTrue(summary.startsWith("=== test (1 recordings)"), summary);
+		assertTrue(summary.contains("--- Hot methods"), summary);
+		assertTrue(build.file("build/reports/jfr/summary.html").isFile());
+	}
+
+	@Test void onlyProfilesWhenEnabled() {
+		BuildResult result = build.run("test");
+
+		assertNull(result.task(":jfrSummary"));
+		assertFalse(build.file("build/reports/jfr").exists());
+	}
+
+}
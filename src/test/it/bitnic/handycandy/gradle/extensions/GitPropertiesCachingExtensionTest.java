@@ -0,0 +1,102 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class GitPropertiesCachingExtensionTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		build.file("settings.gradle", "plugins { id 'it.bitnic.gradle.settings' }\n"
+		                              + "rootProject.name = 'sample'\n"
+		                              + "include 'a', 'b'\n"
+		                              + "buildCache.local.directory = file('build-cache')\n");
+		build.file("gradle.properties", "org.gradle.caching = true\n");
+		build.file(".gitignore", "build/\nbuild-cache/\n.gradle/\ntest-plugins/\n");
+		build.file("build.gradle", build.javaPlugins());
+		for (String module : new String[] { "a", "b" }) {
+			build.file(module + "/src/main/" + module + "/Sample.java", "package " + module + ";\n"
+			                                                             + "public class Sample {}\n");
+			build.file(module + "/src/test/" + module + "/SampleTest.java", "package " + module + ";\n"
+			                                                                 + "class SampleTest {\n"
+			                                                                 + "\t@org.junit.jupiter.api.Test void test() { new Sample(); }\n"
+			                                                                 + "}\n");
+		}
+		git("init", "-q");
+		git("config", "user.email", "dev@example.com");
+		git("config", "user.name", "dev");
+	}
+
+	private void buildScript(String extra) {
+		for (String module : new String[] { "a", "b" }) {
+			build.file(module + "/build.gradle", "plugins { id 'it.bitnic.gradle.java-library' }\n"
+			                                     + TestBuild.junitDependencies()
+			                                     + extra);
+		}
+	}
+
+	// builds, then commits a change to b only and builds again (from scratch, unless incremental)
+	private BuildResult buildAcrossCommits(boolean incremental) {
+		git("add", ".");
+		git("commit", "-q", "-m", "first");
+		git("tag", "v1");
+		build.run("build");
+
+		build.file("b/src/main/b/Sample.java", "package b;\n"
+		                                       + "public class Sample { int changed; }\n");
+		git("commit", "-q", "-a", "-m", "second");
+		return incremental ? build.run("build") : build.run("clean", "build");
+	}
+
+	@Test void takesTheTestsOfUnchangedModulesFromTheCache() {
+		buildScript("");
+
+		BuildResult result = buildAcrossCommits(false);
+
+		assertEquals(TaskOutcome.FROM_CACHE, result.task(":a:compileJava").getOutcome());
+		// git.properties changed (commit id, tags...), but not in a way the tests care about
+		assertEquals(TaskOutcome.FROM_CACHE, result.task(":a:test").getOutcome());
+		assertEquals(TaskOutcome.SUCCESS, result.task(":b:test").getOutcome());
+	}
+
+	@Test void keepsTheJarsOfUnchangedModulesInStableMode() {
+		buildScript("gitPropertiesCaching { stableOnly = true }\n");
+
+		BuildResult result = buildAcrossCommits(true);
+
+		// git.properties gets generated again, with the same content (jar tasks aren't cacheable: they're just up to date)
+		assertEquals(TaskOutcome.UP_TO_DATE, result.task(":a:jar").getOutcome());
+		assertEquals(TaskOutcome.UP_TO_DATE, result.task(":a:test").getOutcome());
+	}
+
+	private void git(String... args) {
+		List<String> command = new ArrayList<>(List.of("git"));
+		command.addAll(Arrays.asList(args));
+		try {
+			Process git = new ProcessBuilder(command).directory(dir.toFile()).inheritIO().start();
+			assertEquals(0, git.waitFor(), "git " + String.join(" ", args));
+		} catch (IOException e) {
+			throw new Error("Couldn't run git", e);
+		} catch (InterruptedException e) {
+			throw new Error(e);
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class JavaCompilerExtensionTest {
+
+	@TempDir Path dir;
+
+	private static final String PRINT_OPTIONS = "tasks.register('printOptions') {\n"
+	                                            + "\tdef options = tasks.compileJava.options\n"
+	                                            + "\tdoLast {\n"
+	                                            + "\t\tdef args = options.forkOptions.jvmArgumentProviders.collectMany { it.asArguments() as List }\n"
+	                                            + "\t\tprintln \"OPTIONS ${options.fork} ${options.forkOptions.memoryMaximumSize} ${args}\"\n"
+	                                            + "\t}\n"
+	                                            + "}\n";
+
+	@Test void appliesSettingsMadeAfterTheTasksAreConfigured() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "tasks.compileJava.options // realized before the settings below\n"
+		                           + "javaCompiler { fork = true; heap = '300m'; jvmArgs = ['-Dsample=true'] }\n"
+		                           + PRINT_OPTIONS);
+
+		BuildResult result = build.run("printOptions");
+
+		assertTrue(result.getOutput().contains("OPTIONS true 300m [-Dsample=true]"), result.getOutput());
+	}
+
+	@Test void leavesTheTaskSettingsAlone() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "javaCompiler { jvmArgs = ['-Dsample=true'] }\n"
+		                           + "tasks.compileJava.options.forkOptions.memoryMaximumSize = '200m'\n"
+		                           + PRINT_OPTIONS);
+
+		BuildResult unforked = build.run("printOptions");
+		BuildResult forked = build.run("printOptions", "-Pjavac.fork");
+
+		assertTrue(unforked.getOutput().contains("OPTIONS false 200m []"), unforked.getOutput());
+		assertTrue(forked.getOutput().contains("OPTIONS true 200m [-Dsample=true]"), forked.getOutput());
+	}
+
+}
@@ -0,0 +1,67 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class JvmProfileExtensionTest {
+
+	@TempDir Path dir;
+
+	private static final String PRINT_TEST = "tasks.register('printTest') {\n"
+	                                         + "\tdoLast { println \"TEST ${test.minHeapSize} ${test.maxHeapSize} ${test.allJvmArgs}\" }\n"
+	                                         + "}\n";
+
+	@Test void appliesSettingsMadeAfterTheTaskGotConfigured() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "test { minHeapSize = '64m' }\n" // realizes the task before jvmProfile { ... }
+		                           + "jvmProfile {\n"
+		                           + "\tprofile = 'lowMemory'\n"
+		                           + "\ttask('test') { maxHeap = '300m' }\n"
+		                           + "}\n"
+		                           + PRINT_TEST);
+
+		BuildResult result = build.run("printTest");
+
+		// the task's own min heap wins, the profile's max heap wins over testParallelism.forkHeap
+		assertTrue(result.getOutput().contains("TEST 64m 300m "), result.getOutput());
+		assertTrue(result.getOutput().contains("-XX:+UseG1GC"), result.getOutput());
+	}
+
+	@Test void leavesTheHeapToTestParallelismWithoutAMaxHeap() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "test { }\n"
+		                           + "jvmProfile { gc = 'Serial' }\n"
+		                           + PRINT_TEST);
+
+		BuildResult result = build.run("printTest");
+
+		assertTrue(result.getOutput().contains("TEST null 512m "), result.getOutput());
+		assertTrue(result.getOutput().contains("-XX:+UseSerialGC"), result.getOutput());
+	}
+
+	@Test void printsTheJvmArgsTasksEndUpWith() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "tasks.register('tool', JavaExec) { jvmArgs '-Dtool=1' }\n"
+		                           + "jvmProfile {\n"
+		                           + "\tgc = 'Serial'\n"
+		                           + "\ttask('test') { maxHeap = '300m' }\n"
+		                           + "}\n"
+		                           + "afterEvaluate { tool.maxHeapSize = '100m' }\n");
+
+		String output = build.run("jvmFlags").getOutput();
+
+		assertTrue(output.lines().anyMatch(line -> line.startsWith("test ") && line.contains("-Xmx300m") && line.contains("-XX:+UseSerialGC")), output);
+		assertTrue(output.lines().anyMatch(line -> line.startsWith("tool ") && line.contains("-Dtool=1") && line.contains("-Xmx100m")), output);
+	}
+
+}
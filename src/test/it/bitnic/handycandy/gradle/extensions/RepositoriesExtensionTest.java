@@ -0,0 +1,48 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class RepositoriesExtensionTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		build.file("settings.gradle", "plugins { id 'it.bitnic.gradle.settings' }\n"
+		                              + "rootProject.name = 'sample'\n"
+		                              + "include 'sub'\n");
+		build.file("mirror/com/example/lib/1.0/lib-1.0.pom", "<project>\n"
+		                                                     + "\t<modelVersion>4.0.0</modelVersion>\n"
+		                                                     + "\t<groupId>com.example</groupId>\n"
+		                                                     + "\t<artifactId>lib</artifactId>\n"
+		                                                     + "\t<version>1.0</version>\n"
+		                                                     + "</project>\n");
+		build.file("mirror/com/example/lib/1.0/lib-1.0.jar", "not really a jar, but it won't be opened");
+		build.file("sub/build.gradle", "plugins { id 'java' }\n"
+		                               + "dependencies { implementation 'com.example:lib:1.0' }\n"
+		                               + "tasks.register('printClasspath') {\n"
+		                               + "\tdef classpath = configurations.runtimeClasspath\n"
+		                               + "\tdoLast { classpath.each { println 'classpath: ' + it.name } }\n"
+		                               + "}\n");
+	}
+
+	@Test void resolvesTheOfflineMirrorFromTheRootDirectory() {
+		build.file("gradle.properties", "repositories.offlineMirror = mirror\n");
+
+		BuildResult result = build.run(":sub:printClasspath");
+
+		assertTrue(result.getOutput().contains("classpath: lib-1.0.jar"), result.getOutput());
+	}
+
+}
@@ -0,0 +1,103 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class TestImpactExtensionTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		build.file("settings.gradle", "plugins { id 'it.bitnic.gradle.settings' }\n"
+		                              + "rootProject.name = 'sample'\n");
+		build.file("build.gradle", "plugins { id 'java' }\n"
+		                           + "sourceSets.main.java.srcDirs = ['src/main']\n"
+		                           + "sourceSets.main.resources.srcDirs = ['src/resources']\n"
+		                           + "sourceSets.test.java.srcDirs = ['src/test']\n"
+		                           + TestBuild.junitDependencies());
+		source("Foo", "1");
+		source("Bar", "1");
+		build.file("src/resources/sample.properties", "value = 1\n");
+		for (String name : new String[] { "Foo", "Bar" }) {
+			build.file("src/test/sample/" + name + "Test.java", "package sample;\n"
+			                                                    + "class " + name + "Test {\n"
+			                                                    + "\t@org.junit.jupiter.api.Test void test() { new " + name + "().value(); }\n"
+			                                                    + "}\n");
+		}
+	}
+
+	private void source(String name, String value) {
+		build.file("src/main/sample/" + name + ".java", "package sample;\n"
+		                                                + "public class " + name + " {\n"
+		                                                + "\tpublic int value() { return " + value + "; }\n"
+		                                                + "}\n");
+	}
+
+	private void constant(String value) {
+		build.file("src/main/sample/Limits.java", "package sample;\n"
+		                                          + "public class Limits {\n"
+		                                          + "\tpublic static final int MAX = " + value + ";\n"
+		                                          + "}\n");
+	}
+
+	private Set<String> testsRun() {
+		File[] results = build.file("build/test-results/test").listFiles((dir, name) -> name.endsWith(".xml"));
+		return Arrays.stream(results == null ? new File[0] : results)
+		             .map(file -> file.getName().replaceFirst("^TEST-sample\\.", "").replaceFirst("\\.xml$", ""))
+		             .collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	@Test void onlyRunsTheAffectedTests() {
+		build.run("test", "-PtestImpact");
+		assertEquals(Set.of("BarTest", "FooTest"), testsRun());
+
+		source("Bar", "2");
+		build.run("test", "-PtestImpact");
+		assertEquals(Set.of("BarTest"), testsRun());
+	}
+
+	@Test void runsAllTestsWhenAConstantChanges() {
+		constant("1");
+		build.run("test", "-PtestImpact");
+
+		// nothing references Limits in the bytecode, but its constant may have been inlined anywhere
+		constant("2");
+		build.run("test", "-PtestImpact");
+
+		assertEquals(Set.of("BarTest", "FooTest"), testsRun());
+	}
+
+	@Test void runsAllTestsWhenAResourceChanges() {
+		build.run("test", "-PtestImpact");
+
+		build.file("src/resources/sample.properties", "value = 2\n");
+		build.run("test", "-PtestImpact");
+
+		assertEquals(Set.of("BarTest", "FooTest"), testsRun());
+	}
+
+	@Test void runsAllTestsWhenDisabled() {
+		build.run("test", "-PtestImpact");
+
+		source("Bar", "2");
+		build.run("test");
+
+		assertEquals(Set.of("BarTest", "FooTest"), testsRun());
+	}
+
+}
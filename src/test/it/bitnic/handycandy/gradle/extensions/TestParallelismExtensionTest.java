@@ -0,0 +1,53 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class TestParallelismExtensionTest {
+
+	@TempDir Path dir;
+
+	private static final String PRINT_TEST = "tasks.register('printTest') {\n"
+	                                         + "\tdoLast { println \"TEST ${test.maxParallelForks} ${test.forkEvery} ${test.maxHeapSize} ${test.allJvmArgs}\" }\n"
+	                                         + "}\n";
+
+	@Test void appliesSettingsMadeAfterTheTaskGotConfigured() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "test { forkEvery = 7 }\n" // realizes the task before testParallelism { ... }
+		                           + "testParallelism {\n"
+		                           + "\tmaxParallelForks = 3\n"
+		                           + "\tforkEvery = 5\n"
+		                           + "\tforkHeap = '256m'\n"
+		                           + "\tjunitParallel = true\n"
+		                           + "}\n"
+		                           + PRINT_TEST);
+
+		BuildResult result = build.run("printTest");
+
+		// the task's own forkEvery wins
+		assertTrue(result.getOutput().contains("TEST 3 7 256m "), result.getOutput());
+		assertTrue(result.getOutput().contains("-Djunit.jupiter.execution.parallel.enabled=true"), result.getOutput());
+	}
+
+	@Test void appliesSettingsToTasksRealizedAfterEvaluation() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "afterEvaluate { test.maxParallelForks }\n"
+		                           + "testParallelism { maxParallelForks = 3 }\n"
+		                           + PRINT_TEST);
+
+		BuildResult result = build.run("printTest");
+
+		assertTrue(result.getOutput().contains("TEST 3 0 512m "), result.getOutput());
+		assertTrue(!result.getOutput().contains("junit.jupiter"), result.getOutput());
+	}
+
+}
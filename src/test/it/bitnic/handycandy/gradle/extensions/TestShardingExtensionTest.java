@@ -0,0 +1,127 @@
+package it.bitnic.handycandy.gradle.extensions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class TestShardingExtensionTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		// with the settings plugin, our conventions are applied before the java plugin
+		build.file("settings.gradle", "plugins { id 'it.bitnic.gradle.settings' }\n"
+		                              + "rootProject.name = 'sample'\n");
+		for (String name : new String[] { "ATest", "BTest", "CTest", "DTest" }) {
+			build.file("src/test/sample/" + name + ".java", "package sample;\n"
+			                                                + "class " + name + " {\n"
+			                                                + "\t@org.junit.jupiter.api.Test void test() {}\n"
+			                                                + "}\n");
+		}
+	}
+
+	private void buildScript(String extra) {
+		build.file("build.gradle", "plugins { id 'java' }\n"
+		                           + "sourceSets.test.java.srcDirs = ['src/test']\n"
+		                           + TestBuild.junitDependencies()
+		                           + extra);
+	}
+
+	private Set<String> testsRun() {
+		File[] results = build.file("build/test-results/test").listFiles((dir, name) -> name.endsWith(".xml"));
+		return Arrays.stream(results == null ? new File[0] : results)
+		             .map(file -> file.getName().replaceFirst("^TEST-sample\\.", "").replaceFirst("\\.xml$", ""))
+		             .collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	@Test void splitsTestsAcrossShards() {
+		buildScript("");
+
+		build.run("test", "-Pshard=1/2");
+		Set<String> first = testsRun();
+		BuildResult again = build.run("test", "-Pshard=1/2");
+		build.run("test", "-Pshard=2/2");
+		Set<String> second = testsRun();
+
+		assertEquals(2, first.size(), first.toString());
+		assertEquals(2, second.size(), second.toString());
+		Set<String> all = new TreeSet<>(first);
+		all.addAll(second);
+		assertEquals(Set.of("ATest", "BTest", "CTest", "DTest"), all);
+		// no timings file to begin with, and the recorded timings go elsewhere: the task is up to date
+		assertEquals(TaskOutcome.UP_TO_DATE, again.task(":test").getOutcome());
+		assertTrue(build.file("build/test-timings/test.properties").isFile());
+		assertTrue(!build.file(".test-timings/test.properties").exists());
+	}
+
+	@Test void keepsTheTaskIncludes() {
+		buildScript("test { include '**/ATest*', '**/BTest*' }\n");
+
+		build.run("test", "-Pshard=1/2");
+		Set<String> first = testsRun();
+		build.run("test", "-Pshard=2/2");
+		Set<String> second = testsRun();
+
+		Set<String> all = new TreeSet<>(first);
+		all.addAll(second);
+		assertEquals(Set.of("ATest", "BTest"), all);
+		assertEquals(1, first.size(), first.toString());
+	}
+
+	@Test void usesTheTimingsOfPreviousRuns() {
+		buildScript("");
+		build.file(".test-timings/test.properties", "sample.ATest=1000\nsample.BTest=10\nsample.CTest=10\nsample.DTest=10\n");
+
+		build.run("test", "-Pshard=1/2");
+
+		assertEquals(Set.of("ATest"), testsRun());
+	}
+
+	@Test void usesTheMergedTimingsOnTheNextRun() {
+		buildScript("");
+		build.file("src/test/sample/ATest.java", "package sample;\n"
+		                                         + "class ATest {\n"
+		                                         + "\t@org.junit.jupiter.api.Test void test() throws Exception { Thread.sleep(1000); }\n"
+		                                         + "}\n");
+
+		build.run("test", "mergeTestTimings");
+		build.run("test", "-Pshard=1/2");
+
+		assertTrue(build.read(".test-timings/test.properties").contains("sample.ATest="));
+		// without timings, the first shard would get ATest and CTest
+		assertEquals(Set.of("ATest"), testsRun());
+	}
+
+	@Test void mergesTheTimingsOfAllShards() {
+		buildScript("");
+		build.file(".test-timings/test.properties", "sample.ATest=99999\nsample.OldTest=7\n");
+
+		build.run("test", "-Pshard=1/2", "mergeTestTimings");
+		build.run("test", "-Pshard=2/2", "mergeTestTimings");
+
+		String timings = build.read(".test-timings/test.properties");
+		for (String name : new String[] { "ATest", "BTest", "CTest", "DTest", "OldTest" }) {
+			assertTrue(timings.contains("sample." + name + "="), timings);
+		}
+		assertFalse(timings.contains("sample.ATest=99999"), timings);
+	}
+
+}
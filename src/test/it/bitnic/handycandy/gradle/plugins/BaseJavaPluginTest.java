@@ -0,0 +1,78 @@
+package it.bitnic.handycandy.gradle.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class BaseJavaPluginTest {
+
+	private static final Pattern ENTRY = Pattern.compile("<classpathentry [^>]*>");
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		build.file("build.gradle", build.javaPlugins("it.bitnic.gradle.root-project", "it.bitnic.gradle.java-library"));
+		build.file("src/main/sample/Sample.java", "package sample;\n"
+		                                          + "public class Sample {}\n");
+		build.file("src/test/sample/SampleTest.java", "package sample;\n"
+		                                              + "class SampleTest {}\n");
+	}
+
+	private List<String> classpathEntries() {
+		Matcher entries = ENTRY.matcher(build.read(".classpath"));
+		return entries.results().map(entry -> entry.group()).collect(Collectors.toList());
+	}
+
+	@Test void doesNotDuplicateClasspathEntries() {
+		build.run("eclipse");
+		List<String> entries = classpathEntries();
+
+		build.run("eclipse");
+
+		assertEquals(entries, classpathEntries());
+		assertEquals(entries.size(), entries.stream().distinct().count(), entries.toString());
+		List<String> sources = entries.stream().filter(entry -> entry.contains("kind=\"src\"")).collect(Collectors.toList());
+		assertTrue(sources.stream().anyMatch(entry -> entry.contains("path=\"src/main\"") && entry.contains("output=\"build-eclipse/main\"")), sources.toString());
+		assertTrue(sources.stream().noneMatch(entry -> entry.contains("output=\"bin/")), sources.toString());
+	}
+
+	@Test void keepsTheTimestampsOfUnchangedEclipseFiles() throws Exception {
+		build.run("eclipse");
+		FileTime modified = FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS));
+		for (String file : new String[] { ".project", ".classpath" }) {
+			Files.setLastModifiedTime(build.file(file).toPath(), modified);
+		}
+
+		build.run("eclipse");
+
+		assertEquals(modified, Files.getLastModifiedTime(build.file(".project").toPath()));
+		assertEquals(modified, Files.getLastModifiedTime(build.file(".classpath").toPath()));
+
+		// a project whose model changed does get rewritten
+		build.file("build.gradle", build.read("build.gradle") + "sourceSets { integrationTest }\n");
+		build.run("eclipse");
+
+		assertEquals(modified, Files.getLastModifiedTime(build.file(".project").toPath()));
+		assertTrue(Files.getLastModifiedTime(build.file(".classpath").toPath()).compareTo(modified) > 0);
+		assertTrue(build.read(".classpath").contains("path=\"src/integrationTest\""));
+	}
+
+}
@@ -0,0 +1,79 @@
+package it.bitnic.handycandy.gradle.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class BasePluginTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		build.file("src/test/sample/SampleTest.java", "package sample;\n"
+		                                              + "class SampleTest {\n"
+		                                              + "\t@org.junit.jupiter.api.Test void assertionsAreEnabled() {\n"
+		                                              + "\t\tboolean enabled = false;\n"
+		                                              + "\t\tassert enabled = true;\n"
+		                                              + "\t\torg.junit.jupiter.api.Assertions.assertTrue(enabled);\n"
+		                                              + "\t}\n"
+		                                              + "}\n");
+	}
+
+	@Test void configuresTasksByType() {
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "sourceSets.test.java.srcDirs = ['src/test']\n"
+		                           + TestBuild.junitDependencies());
+
+		BuildResult result = build.run("test");
+
+		// useJUnitPlatform() and setEnableAssertions(true) from the root project plugin, or the test wouldn't run/pass
+		assertEquals(TaskOutcome.SUCCESS, result.task(":test").getOutcome());
+		assertTrue(build.file("build/test-results/test/TEST-sample.SampleTest.xml").isFile());
+	}
+
+	@Test void configuresTasksRegisteredAfterThePlugin() {
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "sourceSets.test.java.srcDirs = ['src/test']\n"
+		                           + TestBuild.junitDependencies()
+		                           + "tasks.register('otherTest', Test) {\n"
+		                           + "\ttestClassesDirs = sourceSets.test.output.classesDirs\n"
+		                           + "\tclasspath = sourceSets.test.runtimeClasspath\n"
+		                           + "}\n");
+
+		build.run("otherTest");
+
+		assertTrue(build.file("build/test-results/otherTest/TEST-sample.SampleTest.xml").isFile());
+	}
+
+	@Test void configuresTasksByName() {
+		build.file("build.gradle", "plugins { id 'java'; id 'eclipse'; id 'it.bitnic.gradle.root-project' }\n");
+
+		build.run("eclipse");
+
+		assertTrue(build.read(".settings/org.eclipse.jdt.core.prefs").contains("org.eclipse.jdt.core.compiler.codegen.methodParameters=generate"));
+	}
+
+	@Test void doesNotRealizeTasks() {
+		build.file("build.gradle", "plugins { id 'java'; id 'application'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "['otherTest': Test, 'otherRun': JavaExec, 'otherCompile': JavaCompile].each { name, type ->\n"
+		                           + "\ttasks.register(name, type) { throw new GradleException(name + ' got realized') }\n"
+		                           + "}\n");
+
+		BuildResult result = build.run("help");
+
+		assertEquals(TaskOutcome.SUCCESS, result.task(":help").getOutcome());
+	}
+
+}
@@ -0,0 +1,87 @@
+package it.bitnic.handycandy.gradle.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+/**
+ * Builds using our plugins reuse the configuration cache. The java-application plugin isn't covered: it applies shadow
+ * 8.1.1, which doesn't support gradle 9 (see {@link TestBuild#assumeApplicationPluginSupported()}).
+ */
+class ConfigurationCacheTest {
+
+	@TempDir Path dir;
+
+	@Test void reusesTheConfigurationCache() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "sourceSets.test.java.srcDirs = ['src/test']\n"
+		                           + TestBuild.junitDependencies());
+		build.file("src/test/sample/SampleTest.java", "package sample;\n"
+		                                              + "class SampleTest {\n"
+		                                              + "\t@org.junit.jupiter.api.Test void test() {}\n"
+		                                              + "}\n");
+
+		BuildResult first = build.run("build", "--configuration-cache");
+		assertTrue(first.getOutput().contains("Configuration cache entry stored."), first.getOutput());
+
+		// our task actions, listeners and argument providers must work when they come from the cache
+		deleteRecursively(build.file("build/test-results"));
+		BuildResult second = build.run("build", "--configuration-cache");
+		assertTrue(second.getOutput().contains("Configuration cache entry reused."), second.getOutput());
+		assertEquals(TaskOutcome.SUCCESS, second.task(":test").getOutcome());
+		assertTrue(build.file("build/test-results/test/TEST-sample.SampleTest.xml").isFile());
+	}
+
+	@Test void reusesTheConfigurationCacheForJavaLibraries() throws Exception {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", build.javaPlugins("it.bitnic.gradle.root-project", "it.bitnic.gradle.java-library")
+		                           + TestBuild.junitDependencies());
+		build.file("src/main/sample/Sample.java", "package sample;\n"
+		                                          + "public class Sample {}\n");
+		build.file("src/test/sample/SampleTest.java", "package sample;\n"
+		                                              + "class SampleTest {\n"
+		                                              + "\t@org.junit.jupiter.api.Test void test() { new Sample(); }\n"
+		                                              + "}\n");
+		assertEquals(0, new ProcessBuilder("git", "init", "-q").directory(dir.toFile()).inheritIO().start().waitFor()); // for git.properties
+
+		BuildResult first = build.run("build", "--configuration-cache");
+		assertTrue(first.getOutput().contains("Configuration cache entry stored."), first.getOutput());
+
+		deleteRecursively(build.file("build"));
+		BuildResult second = build.run("build", "--configuration-cache");
+		assertTrue(second.getOutput().contains("Configuration cache entry reused."), second.getOutput());
+		assertEquals(TaskOutcome.SUCCESS, second.task(":test").getOutcome());
+		assertTrue(build.file("build/test-results/test/TEST-sample.SampleTest.xml").isFile());
+		assertTrue(build.file("build/libs/sample.jar").isFile());
+	}
+
+	@Test void reusesTheConfigurationCacheForMkdirs() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", build.javaPlugins("it.bitnic.gradle.java-library"));
+
+		BuildResult first = build.run("mkdirs", "--configuration-cache", "-Pstereotypical.basePackage=com.example");
+		assertTrue(first.getOutput().contains("Configuration cache entry stored."), first.getOutput());
+		assertTrue(build.file("src/main/com/example").isDirectory());
+
+		BuildResult second = build.run("mkdirs", "--configuration-cache", "-Pstereotypical.basePackage=com.example");
+		assertTrue(second.getOutput().contains("Configuration cache entry reused."), second.getOutput());
+		assertEquals(TaskOutcome.UP_TO_DATE, second.task(":mkdirs").getOutcome());
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) for (File child : children) deleteRecursively(child);
+		file.delete();
+	}
+
+}
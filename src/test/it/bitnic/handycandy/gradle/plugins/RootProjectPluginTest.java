@@ -0,0 +1,40 @@
+package it.bitnic.handycandy.gradle.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class RootProjectPluginTest {
+
+	@TempDir Path dir;
+
+	@Test void leavesTheBenchmarkTasksAlone() {
+		TestBuild build = new TestBuild(dir);
+		// (a JavaExec task named jmh is no benchmark)
+		build.file("build.gradle", "plugins { id 'java'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "jvmProfile { profile = 'throughput'; maxHeap = '1g' }\n"
+		                           + "['bench': it.bitnic.handycandy.gradle.tasks.JmhTask, 'jmh': JavaExec].each { name, type ->\n"
+		                           + "\ttasks.register(name, type) {\n"
+		                           + "\t\tdef jvmArgs = provider { allJvmArgs }\n"
+		                           + "\t\tdoFirst { println \"${name.toUpperCase()} ${jvmArgs.get()}\"; throw new StopExecutionException() }\n"
+		                           + "\t}\n"
+		                           + "}\n");
+
+		BuildResult result = build.run("bench", "jmh", "-Pprofile");
+
+		String bench = result.getOutput().lines().filter(line -> line.startsWith("BENCH ")).findFirst().orElse("");
+		String other = result.getOutput().lines().filter(line -> line.startsWith("JMH ")).findFirst().orElse("");
+		// the benchmark forks inherit the JVM arguments of the task: no assertions, JVM profile or flight recording
+		assertTrue(bench.contains("--enable-preview"), bench);
+		assertFalse(bench.contains("-ea") || bench.contains("-Xmx") || bench.contains("FlightRecording"), bench);
+		assertTrue(other.contains("-ea") && other.contains("-Xmx1g") && other.contains("-XX:StartFlightRecording"), other);
+	}
+
+}
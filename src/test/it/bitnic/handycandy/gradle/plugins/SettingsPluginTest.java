@@ -0,0 +1,63 @@
+package it.bitnic.handycandy.gradle.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class SettingsPluginTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		build.file("sub/build.gradle", "plugins { id 'java' }\n"
+		                               + "sourceSets.main.java.srcDirs = ['src/main']\n");
+		build.file("sub/src/main/sample/Sample.java", "package sample;\n"
+		                                              + "class Sample {\n"
+		                                              + "\tvoid greet(String name) {}\n"
+		                                              + "}\n");
+	}
+
+	@Test void appliesTheConventionsToAllProjects() {
+		build.file("settings.gradle", "plugins { id 'it.bitnic.gradle.settings' }\n"
+		                              + "rootProject.name = 'sample'\n"
+		                              + "include 'sub'\n");
+
+		build.run(":sub:compileJava");
+
+		// compiled with -parameters
+		String classFile = new String(readAllBytes("sub/build/classes/java/main/sample/Sample.class"), StandardCharsets.ISO_8859_1);
+		assertTrue(classFile.contains("MethodParameters"));
+	}
+
+	@Test void failsWhenAJavaProjectMissesTheConventions() {
+		build.file("settings.gradle", "rootProject.name = 'sample'\n"
+		                              + "include 'sub'\n");
+		build.file("build.gradle", "plugins { id 'it.bitnic.gradle.root-project' }\n");
+
+		BuildResult result = build.fail(":sub:compileJava");
+
+		assertTrue(result.getOutput().contains("project ':sub' uses the java plugin without our conventions"), result.getOutput());
+	}
+
+	private byte[] readAllBytes(String path) {
+		try {
+			return Files.readAllBytes(build.file(path).toPath());
+		} catch (IOException e) {
+			throw new Error("Couldn't read " + path, e);
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+package it.bitnic.handycandy.gradle.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class BuildTimingsServiceTest {
+
+	@TempDir Path dir;
+
+	@Test void keepsTheLastBuildsInTheHistory() {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'it.bitnic.gradle.root-project' }\n");
+		build.file(".gradle/build-timings-history.jsonl", IntStream.range(0, 1005)
+		                                                          .mapToObj(i -> "{\"time\":\"old " + i + "\"}\n")
+		                                                          .collect(Collectors.joining()));
+
+		build.run("help");
+
+		List<String> history = build.read(".gradle/build-timings-history.jsonl").lines().collect(Collectors.toList());
+		assertEquals(1000, history.size());
+		assertEquals("{\"time\":\"old 6\"}", history.get(0));
+		assertTrue(history.get(999).contains("\"executionMs\""), history.get(999));
+		assertTrue(build.read("build/reports/build-timings/build-timings.html").contains("old 1004"));
+	}
+
+}
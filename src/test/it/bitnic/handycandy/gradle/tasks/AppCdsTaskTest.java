@@ -0,0 +1,116 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class AppCdsTaskTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		build.file("src/main/java/sample/Main.java", "package sample;\n"
+		                                             + "public class Main {\n"
+		                                             + "\tpublic static void main(String[] args) {\n"
+		                                             + "\t\tif (args.length == 0) throw new IllegalStateException(\"would serve forever\");\n"
+		                                             + "\t\tSystem.out.println(java.util.List.of(args));\n"
+		                                             + "\t}\n"
+		                                             + "}\n");
+	}
+
+	private void buildScript(String appCds) {
+		// the plugin (not applied: it would need the plugins of BaseJavaPlugin) just puts the task in its classpath
+		build.file("build.gradle", "plugins { id 'application'; id 'it.bitnic.gradle.root-project' apply false }\n"
+		                           + "application.mainClass = 'sample.Main'\n"
+		                           + "it.bitnic.handycandy.gradle.tasks.AppCdsTask.install(project, 'appCds', files(jar, configurations.runtimeClasspath))\n"
+		                           + "tasks.named('appCds') {\n" + appCds + "}\n");
+	}
+
+	@Test void skipsTheTaskWithoutATrainingRun() {
+		buildScript("");
+
+		BuildResult result = build.run("appCds");
+
+		assertEquals(TaskOutcome.SKIPPED, result.task(":appCds").getOutcome());
+	}
+
+	@Test void createsAnArchiveForTheJars() throws Exception {
+		buildScript("\targs = ['warm-up']\n");
+
+		BuildResult result = build.run("appCds");
+
+		assertEquals(TaskOutcome.SUCCESS, result.task(":appCds").getOutcome());
+		assertTrue(result.getOutput().contains("Training run duration (sample.Main warm-up): "), result.getOutput());
+		File archive = build.file("build/appcds/appCds/sample.jsa");
+		Process java = new ProcessBuilder(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+		                                          "-Xshare:on", "-XX:SharedArchiveFile=" + archive, "-Xlog:class+load=info",
+		                                          "-cp", build.file("build/libs/sample.jar").getAbsolutePath(), "sample.Main", "again"))
+		                                  .redirectErrorStream(true)
+		                                  .start();
+		String output = new String(java.getInputStream().readAllBytes());
+		assertEquals(0, java.waitFor(), output);
+		assertTrue(output.contains("sample.Main source: shared objects file"), output);
+	}
+
+	@Test void recreatesTheArchiveWhenAJarTimestampChanges() {
+		buildScript("\targs = ['warm-up']\n");
+		build.run("appCds");
+		assertEquals(TaskOutcome.UP_TO_DATE, build.run("appCds").task(":appCds").getOutcome());
+
+		// the JVM would refuse the archive for a jar with another timestamp, even with the same contents
+		assertTrue(build.file("build/libs/sample.jar").setLastModified(System.currentTimeMillis() - 60_000));
+
+		assertEquals(TaskOutcome.SUCCESS, build.run("appCds").task(":appCds").getOutcome());
+	}
+
+	@Test void usesTheArchiveOfAnInstalledDistribution() throws Exception {
+		// (the java-application plugin does the same for installDist and installShadowDist)
+		build.file("build.gradle", "plugins { id 'application'; id 'it.bitnic.gradle.root-project' apply false }\n"
+		                           + "application.mainClass = 'sample.Main'\n"
+		                           + "it.bitnic.handycandy.gradle.tasks.AppCdsTask.installForDistribution(project, 'appCds', 'run', 'startScripts', 'installDist')\n"
+		                           + "tasks.named('appCds') { args = ['warm-up'] }\n"
+		                           + "tasks.named('run') { args = ['again']; jvmArgs '-Xlog:class+load=info' }\n");
+
+		BuildResult result = build.run("installDist");
+		assertEquals(TaskOutcome.SUCCESS, result.task(":appCds").getOutcome());
+		assertTrue(build.file("build/install/sample/lib/sample.jsa").isFile());
+		String script = build.read("build/install/sample/bin/sample");
+		assertFalse(script.contains("__APP_HOME__"), script);
+		assertTrue(script.contains("\"-XX:SharedArchiveFile='\"$APP_HOME\"'/lib/sample.jsa\""), script);
+		assertTrue(build.read("build/install/sample/bin/sample.bat").contains("\"-XX:SharedArchiveFile=%APP_HOME%/lib/sample.jsa\""));
+
+		// the archive doesn't make the install dir out of date, which would mean a training run on every build
+		result = build.run("installDist");
+		assertEquals(TaskOutcome.UP_TO_DATE, result.task(":installDist").getOutcome());
+		assertEquals(TaskOutcome.UP_TO_DATE, result.task(":appCds").getOutcome());
+
+		// -Xshare:on makes the JVM fail if it can't use the archive
+		ProcessBuilder startScript = new ProcessBuilder(build.file("build/install/sample/bin/sample").getAbsolutePath(), "again").redirectErrorStream(true);
+		startScript.environment().put("JAVA_HOME", System.getProperty("java.home"));
+		startScript.environment().put("JAVA_OPTS", "-Xshare:on -Xlog:class+load=info");
+		Process java = startScript.start();
+		String output = new String(java.getInputStream().readAllBytes());
+		assertEquals(0, java.waitFor(), output);
+		assertTrue(output.contains("sample.Main source: shared objects file"), output);
+
+		result = build.run("run");
+		assertTrue(result.getOutput().contains("sample.Main source: shared objects file"), result.getOutput());
+		assertTrue(result.getOutput().contains("[again]"), result.getOutput());
+	}
+
+}
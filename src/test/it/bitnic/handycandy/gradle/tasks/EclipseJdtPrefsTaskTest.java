@@ -0,0 +1,60 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class EclipseJdtPrefsTaskTest {
+
+	@TempDir Path dir;
+
+	@Test void onlyWritesThePrefsWhenTheyChange() throws Exception {
+		TestBuild build = new TestBuild(dir);
+		build.file("build.gradle", "plugins { id 'java'; id 'eclipse'; id 'it.bitnic.gradle.root-project' }\n");
+		Path prefsFile = build.file(".settings/org.eclipse.jdt.core.prefs").toPath();
+
+		build.run("eclipse");
+
+		String prefs = build.read(".settings/org.eclipse.jdt.core.prefs");
+		List<String> lines = prefs.lines().collect(Collectors.toList());
+		assertTrue(lines.contains("org.eclipse.jdt.core.compiler.codegen.methodParameters=generate"), prefs); // ours
+		assertTrue(lines.stream().anyMatch(line -> line.startsWith("org.eclipse.jdt.core.compiler.source=")), prefs); // eclipseJdt's
+		assertFalse(prefs.contains("#"), prefs); // no timestamp
+		assertEquals(lines.stream().sorted().collect(Collectors.toList()), lines);
+
+		FileTime modified = FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS));
+		Files.setLastModifiedTime(prefsFile, modified);
+		byte[] content = Files.readAllBytes(prefsFile);
+
+		build.run("eclipse");
+
+		assertArrayEquals(content, Files.readAllBytes(prefsFile));
+		assertEquals(modified, Files.getLastModifiedTime(prefsFile));
+
+		// but changes do get written, keeping what was set in eclipse
+		build.file(".settings/org.eclipse.jdt.core.prefs", prefs + "org.eclipse.jdt.core.formatter.lineSplit=120\n");
+		build.file("build.gradle", "plugins { id 'java'; id 'eclipse'; id 'it.bitnic.gradle.root-project' }\n"
+		                           + "tasks.eclipseJdtPrefs.preferences.put('org.eclipse.jdt.core.compiler.taskCaseSensitive', 'disabled')\n");
+
+		build.run("eclipse");
+
+		String changed = build.read(".settings/org.eclipse.jdt.core.prefs");
+		assertTrue(changed.contains("org.eclipse.jdt.core.compiler.taskCaseSensitive=disabled\n"), changed);
+		assertTrue(changed.contains("org.eclipse.jdt.core.formatter.lineSplit=120\n"), changed);
+	}
+
+}
@@ -0,0 +1,66 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class JlinkTaskTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		build.file("src/main/java/sample/Main.java", "package sample;\n"
+		                                             + "public class Main {\n"
+		                                             + "\tpublic static void main(String[] args) {\n"
+		                                             + "\t\tSystem.out.println(new java.sql.Date(0).getClass().getModule().getName());\n"
+		                                             + "\t\tSystem.out.println(System.getProperty(\"greeting\") + \"|\" + System.getProperty(\"quote\") + \"|\" + java.util.List.of(args));\n"
+		                                             + "\t}\n"
+		                                             + "}\n");
+		// the plugin (not applied: it would need the plugins of BaseJavaPlugin) just puts the task in its classpath
+		build.file("build.gradle", "plugins { id 'application'; id 'it.bitnic.gradle.root-project' apply false }\n"
+		                           + "application.mainClass = 'sample.Main'\n"
+		                           + "it.bitnic.handycandy.gradle.tasks.JlinkTask.install(project, 'jlink', 'jar')\n"
+		                           + "tasks.named('jlink') { jvmArgs = ['-Dgreeting=hello $USER *', \"-Dquote=it's\"] }\n");
+	}
+
+	@Test void packagesTheJarWithTheModulesItNeeds() throws Exception {
+		BuildResult result = build.run("jlink");
+
+		assertEquals(TaskOutcome.SUCCESS, result.task(":jlink").getOutcome());
+		assertTrue(result.getOutput().contains("(java.base,java.sql)"), result.getOutput());
+		assertTrue(result.getOutput().contains("JVM startup without the application (java -version): "), result.getOutput());
+
+		Process java = new ProcessBuilder(build.file("build/jlink/sample/runtime/bin/java").getAbsolutePath(), "--list-modules")
+		                                  .redirectErrorStream(true)
+		                                  .start();
+		String modules = new String(java.getInputStream().readAllBytes());
+		assertEquals(0, java.waitFor(), modules);
+		assertTrue(modules.contains("java.sql@"), modules);
+		assertFalse(modules.contains("java.desktop@"), modules);
+	}
+
+	@Test void writesStartScriptsPassingTheJvmArgsAsIs() throws Exception {
+		build.run("jlink");
+
+		Process app = new ProcessBuilder(build.file("build/jlink/sample/bin/sample").getAbsolutePath(), "a b", "c")
+		                                 .redirectErrorStream(true)
+		                                 .start();
+		String output = new String(app.getInputStream().readAllBytes());
+		assertEquals(0, app.waitFor(), output);
+		assertEquals("java.sql\nhello $USER *|it's|[a b, c]\n", output);
+	}
+
+}
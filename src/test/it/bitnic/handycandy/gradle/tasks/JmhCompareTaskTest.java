@@ -0,0 +1,70 @@
+package it.bitnic.handycandy.gradle.tasks;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.bitnic.handycandy.gradle.TestBuild;
+
+class JmhCompareTaskTest {
+
+	@TempDir Path dir;
+
+	TestBuild build;
+
+	@BeforeEach void setUp() {
+		build = new TestBuild(dir);
+		// the plugin (not applied: it would need the plugins of BaseJavaPlugin) just puts the task in its classpath
+		build.file("build.gradle", "plugins { id 'it.bitnic.gradle.root-project' apply false }\n"
+		                           + "tasks.register('jmhCompare', it.bitnic.handycandy.gradle.tasks.JmhCompareTask) {\n"
+		                           + "\tresults = file('results.json')\n"
+		                           + "\tbaseline = file('baseline.json')\n"
+		                           + "\tthreshold = 0.1d\n"
+		                           + "\tupdateBaseline = false\n"
+		                           + "}\n");
+	}
+
+	private static String results(String... benchmarks) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < benchmarks.length; i += 2) {
+			json.append(i == 0 ? "" : ",")
+			    .append("{\"benchmark\":\"").append(benchmarks[i]).append("\",\"mode\":\"avgt\",")
+			    .append("\"primaryMetric\":{\"score\":").append(benchmarks[i + 1]).append(",\"scoreUnit\":\"ns/op\"}}");
+		}
+		return json.append("]").toString();
+	}
+
+	@Test void failsOnRegressions() {
+		build.file("baseline.json", results("a.B.run", "10.0"));
+		build.file("results.json", results("a.B.run", "12.0"));
+
+		BuildResult result = build.fail("jmhCompare");
+
+		assertTrue(result.getOutput().contains("1 benchmark(s) worse than the baseline by more than 10%"), result.getOutput());
+	}
+
+	@Test void doesNotCompareWithAZeroBaseline() {
+		build.file("baseline.json", results("a.B.run", "0.0"));
+		build.file("results.json", results("a.B.run", "0.5"));
+
+		BuildResult result = build.run("jmhCompare");
+
+		assertTrue(result.getOutput().contains("(not compared: zero baseline)"), result.getOutput());
+	}
+
+	@Test void failsOnBenchmarksMissingFromTheBaseline() {
+		build.file("baseline.json", results("a.B.run", "10.0"));
+		build.file("results.json", results("a.B.run", "10.0", "a.B.other", "5.0"));
+
+		BuildResult result = build.fail("jmhCompare");
+
+		assertTrue(result.getOutput().contains("1 benchmark(s) missing from the baseline"), result.getOutput());
+		assertTrue(result.getOutput().contains("-PjmhUpdateBaseline"), result.getOutput());
+	}
+
+}